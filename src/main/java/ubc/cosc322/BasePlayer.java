@@ -1,7 +1,12 @@
 package ubc.cosc322;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 import ygraph.ai.smartfox.games.BaseGameGUI;
 import ygraph.ai.smartfox.games.GameClient;
@@ -18,32 +23,102 @@ import ygraph.ai.smartfox.games.amazons.AmazonsGameMessage;
  * The monte carlo player class extends the BasePlayer class and overrides the processMove method to make a move using the monte carlo algorithm.
  */
 public abstract class BasePlayer extends GamePlayer {
+    // Every game is appended to this binary log (see GameRecordLog). Replay it with GameRecordReader.
+    private static final String GAME_LOG_FILE = System.getProperty("amazons.gamelog", "game-records.bin");
+
     protected GameClient gameClient = null;
     protected BaseGameGUI gamegui = null;
     protected String userName;
     protected String passwd;
     protected int localPlayer;
     protected LocalBoard localBoard;
+    protected GameRecordLog gameLog;
+    private String gameLogFile = GAME_LOG_FILE;
+
+    // Room to join after login (headless players have no GUI to pick one)
+    protected String roomName = null;
+
+    // Where moves go. Defaults to the game server; LocalReferee replaces it.
+    private Consumer<Map<String, Object>> moveSender = null;
+
+    // All game messages are handled in order on this thread, so the client's callback thread is never
+    // blocked. Long work (the search) must run elsewhere and hand its result back to this thread.
+    protected final ExecutorService gameLoop;
 
     public BasePlayer(String userName, String passwd) {
+        this(userName, passwd, true);
+    }
+
+    public BasePlayer(String userName, String passwd, boolean showGui) {
         this.userName = userName;
         this.passwd = passwd;
-        this.gamegui = new BaseGameGUI(this);
+        if (showGui) {
+            this.gamegui = new BaseGameGUI(this);
+        }
         this.localBoard = new LocalBoard();
+        this.gameLoop = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-loop-" + userName);
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     protected abstract void processMove(Map<String, Object> msgDetails);
 
-    protected void handleGameStart(Map<String, Object> msgDetails) {
-        if (gamegui == null) {
-            gamegui.updateGameState(msgDetails);
-        }
+    /**
+     * Stops any move still being worked out, e.g. because the game ended or the position changed.
+     * Players that compute moves in the background override this; a cancelled move is never sent.
+     */
+    public void cancelPendingMove() {
+    }
 
+    /**
+     * Called when the game ends outside the normal move flow (e.g. by LocalReferee on a timeout or an
+     * illegal move). Stops thinking and logs the end; winner is 0 if there is none.
+     */
+    public void gameOver(int winner, int reason) {
+        cancelPendingMove();
+        // Logged on the game loop, after any move message still queued there
+        gameLoop.execute(() -> {
+            if (gameLog != null) {
+                gameLog.gameEnd(winner, reason);
+            }
+        });
+    }
+
+    /**
+     * Stops thinking and shuts down the player's threads once the messages already queued are handled.
+     * The player can't play again afterwards.
+     */
+    public void shutdown() {
+        cancelPendingMove();
+        gameLoop.shutdown();
+    }
+
+    protected void handleGameStart(Map<String, Object> msgDetails) {
         String whitePlayer = (String) msgDetails.get(AmazonsGameMessage.PLAYER_WHITE);
         localPlayer = whitePlayer.equals(userName) ? 1 : 2;
 
         System.out.println("***** PLAYER INFO: " + userName + " (Player " + localPlayer + ") *****");
+        localBoard.reset();
         localBoard.setLocalPlayer(localPlayer);
+        if (gameLog == null) {
+            gameLog = GameRecordLog.open(Paths.get(gameLogFile));
+            if (gameLog != null) {
+                // Ends the record of a game still running when the process exits
+                GameRecordLog log = gameLog;
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        log.close();
+                    } catch (IOException e) {
+                        System.err.println("Could not close game record log: " + e.getMessage());
+                    }
+                }));
+            }
+        }
+        if (gameLog != null) {
+            gameLog.gameStart(localPlayer);
+        }
 
         if (localPlayer == 2) {
             processMove(msgDetails);
@@ -59,15 +134,28 @@ public abstract class BasePlayer extends GamePlayer {
         if (gamegui != null) {
             gamegui.setRoomInformation(gameClient.getRoomList());
         }
+        if (roomName != null) {
+            System.out.println(userName + " joining room: " + roomName);
+            gameClient.joinRoom(roomName);
+        }
     }
+    // Called on the client's thread: queue the message for the game loop and return right away
     @Override
     public boolean handleGameMessage(String messageType, Map<String, Object> msgDetails) {
+        gameLoop.execute(() -> dispatchGameMessage(messageType, msgDetails));
+        return true;
+    }
+
+    private void dispatchGameMessage(String messageType, Map<String, Object> msgDetails) {
         System.out.println("Received game message: " + messageType);
         System.out.println("Details: " + msgDetails);
     
         switch (messageType) {
             case GameMessage.GAME_STATE_BOARD:
-                gamegui.setGameState((ArrayList<Integer>) msgDetails.get(AmazonsGameMessage.GAME_STATE));
+                cancelPendingMove();
+                if (gamegui != null) {
+                    gamegui.setGameState((ArrayList<Integer>) msgDetails.get(AmazonsGameMessage.GAME_STATE));
+                }
                 localBoard.localPlayer = localPlayer;
                 break;
             case GameMessage.GAME_ACTION_MOVE:
@@ -76,24 +164,67 @@ public abstract class BasePlayer extends GamePlayer {
                 ArrayList<Integer> arrowTarget = getServerMsg(msgDetails, "arrow-position");
             
                 MoveAction moveAction = new MoveAction(queenCurrent, queenTarget, arrowTarget);
+                // A move arriving while we are still thinking means our search is for a stale position
+                cancelPendingMove();
+                if (gameLog != null) {
+                    gameLog.move(localBoard.getPositionValue(queenCurrent), moveAction);
+                }
                 localBoard.updateState(moveAction);
-                gamegui.updateGameState(queenCurrent, queenTarget, arrowTarget);
+                if (gamegui != null) {
+                    gamegui.updateGameState(queenCurrent, queenTarget, arrowTarget);
+                }
 
                 processMove(msgDetails);
                 break;
             
             case GameMessage.GAME_ACTION_START:
+                cancelPendingMove();
                 handleGameStart(msgDetails);
                 break;
             default:
                 System.out.println("Unhandled game message type: " + messageType);
         }
-        return true;
     }
     
     
     
     
+    // Logs the end of the game if the given player has no moves left. Returns true if the game is over.
+    protected boolean recordGameEndIfOver(int playerToMove) {
+        if (new MoveActionFactory(localBoard.getState(), playerToMove).hasMoves()) {
+            return false;
+        }
+        if (gameLog != null) {
+            gameLog.gameEnd(playerToMove == 1 ? 2 : 1);
+        }
+        return true;
+    }
+
+    // Shows our move on the GUI (if any) and sends it to the server, or to the move sender if one is set
+    protected void sendMoveMessage(Map<String, Object> moveMsg) {
+        if (gamegui != null) {
+            gamegui.updateGameState(moveMsg);
+        }
+        if (moveSender != null) {
+            moveSender.accept(moveMsg);
+        } else {
+            gameClient.sendMoveMessage(moveMsg);
+        }
+    }
+
+    public void setMoveSender(Consumer<Map<String, Object>> moveSender) {
+        this.moveSender = moveSender;
+    }
+
+    public void setRoomName(String roomName) {
+        this.roomName = roomName;
+    }
+
+    // Must be called before the game starts
+    public void setGameLogFile(String gameLogFile) {
+        this.gameLogFile = gameLogFile;
+    }
+
     public int getLocalPlayer() {
         return localPlayer;
     }
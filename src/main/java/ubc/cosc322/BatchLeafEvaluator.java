@@ -0,0 +1,164 @@
+package ubc.cosc322;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/* BatchLeafEvaluator.java
+ *
+ * Collects playout leaves from all search threads into fixed-size batches and scores them together.
+ * A leaf is won for our player if our queens have more moves than the opponent's (the same test the
+ * playout used to do one board at a time).
+ *
+ * Boards are stored square-major ("struct of arrays"): cell [square * batchSize + lane] holds square
+ * `square` of the lane-th board in the batch. The mobility kernel then runs every inner loop across
+ * lanes with no branches, so the JIT can compile it to vector instructions. For each direction we
+ * compute the number of empty squares in a row starting next to every square, and sum it over the
+ * squares holding each player's queens:
+ *
+ *     run[s] = empty[s + d] * (1 + run[s + d])
+ *
+ * Whichever thread fills a batch evaluates it and hands every result to the ResultHandler, so no
+ * extra thread is needed. Call flush() once the search threads have stopped to score the last
+ * partial batch.
+ */
+public class BatchLeafEvaluator<T> {
+
+    public interface ResultHandler<T> {
+        void onResult(T leaf, boolean win);
+    }
+
+    private static final int BOARD_SIZE = 10;
+    private static final int[][] DIRECTIONS = {
+        {0, 1}, {0, -1}, {1, 0}, {-1, 0},
+        {1, 1}, {1, -1}, {-1, 1}, {-1, -1}
+    };
+
+    private final int batchSize;
+    private final int ourPlayer;
+    private final ResultHandler<T> handler;
+    private final ConcurrentLinkedQueue<Batch> freeBatches = new ConcurrentLinkedQueue<>();
+    private Batch current;
+
+    public BatchLeafEvaluator(int batchSize, int ourPlayer, ResultHandler<T> handler) {
+        this.batchSize = batchSize;
+        this.ourPlayer = ourPlayer;
+        this.handler = handler;
+        this.current = new Batch();
+    }
+
+    // Adds a leaf to the current batch, evaluating the batch if this leaf fills it
+    public void submit(LocalBoard board, T leaf) {
+        Batch full = null;
+        synchronized (this) {
+            current.add(board.getState(), leaf);
+            if (current.size == batchSize) {
+                full = current;
+                current = nextBatch();
+            }
+        }
+        if (full != null) {
+            evaluate(full);
+        }
+    }
+
+    // Evaluates whatever is left in the current batch
+    public void flush() {
+        Batch partial;
+        synchronized (this) {
+            if (current.size == 0) {
+                return;
+            }
+            partial = current;
+            current = nextBatch();
+        }
+        evaluate(partial);
+    }
+
+    private Batch nextBatch() {
+        Batch batch = freeBatches.poll();
+        return batch != null ? batch : new Batch();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void evaluate(Batch batch) {
+        countMobility(batch);
+        for (int lane = 0; lane < batch.size; lane++) {
+            handler.onResult((T) batch.leaves[lane], batch.ourMobility[lane] > batch.opponentMobility[lane]);
+            batch.leaves[lane] = null;
+        }
+        batch.size = 0;
+        freeBatches.add(batch);
+    }
+
+    // Lane-parallel mobility count for every board in the batch
+    private void countMobility(Batch batch) {
+        int lanes = batch.size;
+        int[] empty = batch.empty;
+        int[] ours = batch.ours;
+        int[] theirs = batch.theirs;
+        int[] run = batch.run;
+        int[] ourMobility = batch.ourMobility;
+        int[] opponentMobility = batch.opponentMobility;
+
+        for (int lane = 0; lane < lanes; lane++) {
+            ourMobility[lane] = 0;
+            opponentMobility[lane] = 0;
+        }
+
+        for (int[] dir : DIRECTIONS) {
+            // Visit squares so that the neighbour in this direction is always computed first
+            int rowStart = dir[0] > 0 ? BOARD_SIZE : 1;
+            int rowStep = dir[0] > 0 ? -1 : 1;
+            int colStart = dir[1] > 0 ? BOARD_SIZE : 1;
+            int colStep = dir[1] > 0 ? -1 : 1;
+
+            for (int r = 0, row = rowStart; r < BOARD_SIZE; r++, row += rowStep) {
+                for (int c = 0, col = colStart; c < BOARD_SIZE; c++, col += colStep) {
+                    int base = LocalBoard.toSquare(row, col) * batchSize;
+                    int nextRow = row + dir[0];
+                    int nextCol = col + dir[1];
+
+                    if (nextRow < 1 || nextRow > BOARD_SIZE || nextCol < 1 || nextCol > BOARD_SIZE) {
+                        for (int lane = 0; lane < lanes; lane++) {
+                            run[base + lane] = 0;
+                        }
+                        continue;
+                    }
+
+                    int next = LocalBoard.toSquare(nextRow, nextCol) * batchSize;
+                    for (int lane = 0; lane < lanes; lane++) {
+                        run[base + lane] = empty[next + lane] * (1 + run[next + lane]);
+                    }
+                    for (int lane = 0; lane < lanes; lane++) {
+                        ourMobility[lane] += ours[base + lane] * run[base + lane];
+                        opponentMobility[lane] += theirs[base + lane] * run[base + lane];
+                    }
+                }
+            }
+        }
+    }
+
+    private class Batch {
+        int[] empty = new int[LocalBoard.SQUARES * batchSize];
+        int[] ours = new int[LocalBoard.SQUARES * batchSize];
+        int[] theirs = new int[LocalBoard.SQUARES * batchSize];
+        int[] run = new int[LocalBoard.SQUARES * batchSize];
+        int[] ourMobility = new int[batchSize];
+        int[] opponentMobility = new int[batchSize];
+        Object[] leaves = new Object[batchSize];
+        int size = 0;
+
+        void add(int[][] state, Object leaf) {
+            int lane = size++;
+            leaves[lane] = leaf;
+            for (int row = 1; row <= BOARD_SIZE; row++) {
+                for (int col = 1; col <= BOARD_SIZE; col++) {
+                    int cell = state[row][col];
+                    int index = LocalBoard.toSquare(row, col) * batchSize + lane;
+                    empty[index] = cell == LocalBoard.EMPTY ? 1 : 0;
+                    ours[index] = cell == ourPlayer ? 1 : 0;
+                    theirs[index] = (cell > 0 && cell != ourPlayer) ? 1 : 0;
+                }
+            }
+        }
+    }
+}
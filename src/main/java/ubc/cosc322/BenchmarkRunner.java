@@ -0,0 +1,223 @@
+package ubc.cosc322;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/* BenchmarkRunner.java
+ *
+ * Searches every position of a benchmark suite with a seeded, fixed-iteration, single-threaded
+ * MonteCarloSearch, and reports iterations per second and the chosen move for each. The search does the
+ * same work on every run, so a change in the chosen move or the tree checksum means the search itself
+ * changed, and a change in speed is a real speed change. Use it as the baseline for optimizations.
+ *
+ * The standard suite is src/main/resources/benchmarks/positions.txt (loaded from the classpath). It is used
+ * when no --suite is given, or with --suite -. Positions are searched with the player's first-move width and
+ * depth (see MonteCarloSearch's schedule).
+ *
+ * SUITE FORMAT:
+ * Lines starting with '#' and blank lines are ignored. Each position is a line
+ * "position <name> <white|black to move>" followed by 10 board rows in LocalBoard.toText() form.
+ *
+ * With --verify, every position is searched twice with the same seed instead, and the runner checks that
+ * both searches chose the same move with the same root visit counts (and exits with status 1 if not).
+ *
+ * USAGE:
+ * java ubc.cosc322.BenchmarkRunner [--verify] [--suite <file>] [--iterations <n>] [--seed <n>]
+ */
+public class BenchmarkRunner {
+
+    private static final String DEFAULT_SUITE = "/benchmarks/positions.txt";
+    private static final long DEFAULT_ITERATIONS = 2000;
+    private static final long DEFAULT_SEED = 322;
+    private static final String USAGE =
+            "Usage: BenchmarkRunner [--verify] [--suite <file>] [--iterations <n>] [--seed <n>]";
+
+    private static final int MOVE_CHOICES = MonteCarloSearch.moveChoicesFor(1);
+    private static final int MAX_DEPTH = MonteCarloSearch.maxDepthFor(1);
+
+    public static class Position {
+        public final String name;
+        public final LocalBoard board;
+
+        public Position(String name, LocalBoard board) {
+            this.name = name;
+            this.board = board;
+        }
+    }
+
+    public static List<Position> loadSuite(BufferedReader reader) throws IOException {
+        List<Position> positions = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] header = line.split("\\s+");
+            if (header.length != 3 || !header[0].equals("position")) {
+                throw new IOException("Expected 'position <name> <white|black>', got: " + line);
+            }
+            int player;
+            if (header[2].equals("white")) {
+                player = LocalBoard.QUEEN_PLAYER_1;
+            } else if (header[2].equals("black")) {
+                player = LocalBoard.QUEEN_PLAYER_2;
+            } else {
+                throw new IOException("Unknown player to move: " + header[2]);
+            }
+
+            List<String> rows = new ArrayList<>();
+            while (rows.size() < 10) {
+                String row = reader.readLine();
+                if (row == null) {
+                    throw new IOException("Position " + header[1] + " ends early");
+                }
+                rows.add(row);
+            }
+            try {
+                positions.add(new Position(header[1], LocalBoard.fromText(rows, player)));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Bad board for position " + header[1] + ": " + e.getMessage());
+            }
+        }
+        return positions;
+    }
+
+    private static List<Position> loadSuite(String file) throws IOException {
+        if (file != null) {
+            try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+                return loadSuite(reader);
+            }
+        }
+        InputStream in = BenchmarkRunner.class.getResourceAsStream(DEFAULT_SUITE);
+        if (in == null) {
+            throw new IOException("Benchmark suite " + DEFAULT_SUITE + " not found on the classpath");
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return loadSuite(reader);
+        }
+    }
+
+    // Checksum of the root children's moves and statistics. Equal checksums mean the searches built the same tree.
+    static long treeChecksum(TreeNode rootNode) {
+        long checksum = rootNode.visits;
+        for (TreeNode child : rootNode.children) {
+            checksum = checksum * 31 + child.action.encode();
+            checksum = checksum * 31 + child.visits;
+            checksum = checksum * 31 + child.wins;
+        }
+        return checksum;
+    }
+
+    // Root child visit counts, in child order
+    private static int[] rootVisits(TreeNode rootNode) {
+        int[] visits = new int[rootNode.children.size()];
+        for (int i = 0; i < visits.length; i++) {
+            visits[i] = rootNode.children.get(i).visits;
+        }
+        return visits;
+    }
+
+    // Searches every position twice with the same seed. Returns true if every pair built the same tree.
+    public static boolean verify(List<Position> positions, long iterations, long seed) {
+        boolean reproducible = true;
+        for (Position position : positions) {
+            TreeNode first = new MonteCarloSearch(MOVE_CHOICES, MAX_DEPTH, seed)
+                    .searchIterations(new TreeNode(position.board, null, null), iterations);
+            TreeNode second = new MonteCarloSearch(MOVE_CHOICES, MAX_DEPTH, seed)
+                    .searchIterations(new TreeNode(position.board, null, null), iterations);
+            TreeNode firstBest = MonteCarloSearch.bestChild(first);
+            TreeNode secondBest = MonteCarloSearch.bestChild(second);
+            boolean sameMove = (firstBest == null) ? secondBest == null
+                    : secondBest != null && firstBest.action.encode() == secondBest.action.encode();
+            boolean same = sameMove && Arrays.equals(rootVisits(first), rootVisits(second))
+                    && treeChecksum(first) == treeChecksum(second);
+            System.out.printf("%-16s %s  best %s  visits %s%n", position.name, same ? "same" : "DIFFERENT",
+                    (firstBest != null) ? firstBest.action : "none", Arrays.toString(rootVisits(first)));
+            if (!same) {
+                System.out.printf("%-16s second run: best %s  visits %s%n", "",
+                        (secondBest != null) ? secondBest.action : "none", Arrays.toString(rootVisits(second)));
+                reproducible = false;
+            }
+        }
+        return reproducible;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean verify = false;
+        String suiteFile = null;
+        long iterations = DEFAULT_ITERATIONS;
+        long seed = DEFAULT_SEED;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--verify")) {
+                    verify = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException(arg.startsWith("--") ? arg + " needs a value" : "Unknown argument: " + arg);
+                }
+                String value = args[++i];
+                if (arg.equals("--suite")) {
+                    // "-" (or an empty name) means the standard suite
+                    suiteFile = (value.isEmpty() || value.equals("-")) ? null : value;
+                } else if (arg.equals("--iterations")) {
+                    iterations = Long.parseLong(value);
+                    if (iterations <= 0) {
+                        throw new IllegalArgumentException("--iterations must be positive");
+                    }
+                } else if (arg.equals("--seed")) {
+                    seed = Long.parseLong(value);
+                } else {
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println((e instanceof NumberFormatException) ? "Bad number: " + e.getMessage() : e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        List<Position> positions = loadSuite(suiteFile);
+        if (verify) {
+            System.out.println("Verifying: " + positions.size() + " positions, " + iterations + " iterations, seed " + seed);
+            boolean reproducible = verify(positions, iterations, seed);
+            System.out.println(reproducible ? "All searches reproducible." : "Searches with the same seed differ!");
+            if (!reproducible) {
+                System.exit(1);
+            }
+            return;
+        }
+        System.out.println("Benchmark: " + positions.size() + " positions, " + iterations + " iterations, seed " + seed);
+        SearchWarmup.runOnce(SearchWarmup.WARMUP_TIME);
+
+        long totalIterations = 0;
+        long totalNanos = 0;
+        for (Position position : positions) {
+            MonteCarloSearch search = new MonteCarloSearch(MOVE_CHOICES, MAX_DEPTH, seed);
+            long start = System.nanoTime();
+            TreeNode rootNode = search.searchIterations(new TreeNode(position.board, null, null), iterations);
+            long nanos = System.nanoTime() - start;
+            totalIterations += search.getIterations();
+            totalNanos += nanos;
+
+            TreeNode best = MonteCarloSearch.bestChild(rootNode);
+            System.out.printf("%-16s %8.0f iterations/sec  %7d ms  best %s  visits %d  win rate %.2f%%  checksum %016x%n",
+                    position.name, search.getIterations() * 1e9 / Math.max(1, nanos), nanos / 1000000,
+                    (best != null) ? best.action : "none", (best != null) ? best.visits : 0,
+                    (best != null && best.visits > 0) ? 100.0 * best.wins / best.visits : 0.0, treeChecksum(rootNode));
+        }
+        System.out.printf("Total: %d iterations in %d ms (%.0f iterations/sec)%n",
+                totalIterations, totalNanos / 1000000, totalIterations * 1e9 / Math.max(1, totalNanos));
+    }
+}
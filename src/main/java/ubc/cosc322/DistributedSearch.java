@@ -0,0 +1,292 @@
+package ubc.cosc322;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* DistributedSearch.java
+ *
+ * Spreads a search over several SearchWorker processes on the same machine. The coordinator (a
+ * MonteCarloPlayer) sends the root position and its deadline to every worker over loopback TCP, runs its
+ * own search meanwhile, and then adds each worker's root-child visits and wins to its own tree before
+ * picking a move. Each worker has its own heap, so the search scales past what one JVM handles well.
+ *
+ * Workers are listed with -Damazons.workers=<host:port>,..., or started by the player with
+ * -Damazons.spawnWorkers=<count> on ports from -Damazons.workerPort=<port> (default 32200). Spawned
+ * workers get the same classpath and amazons.* settings. They and the coordinator's own search get an
+ * equal share of the cores each (see localThreads).
+ *
+ * A worker that fails or misses the deadline is left out of that move and reconnected for the next one.
+ *
+ * PROTOCOL (big-endian, one connection per coordinator and worker):
+ * search: byte 'S', int search id, 100 bytes board (row-major, rows and columns 1-10), byte player to move,
+ *         int move choices, int max depth, long deadline (epoch ms)
+ * cancel: byte 'C', int search id - the worker stops that search and replies right away. A cancel for a
+ *         search the worker has already replied to (a late cancel) is ignored.
+ * reply:  long iterations, int root visits, int root wins, int children, then per child
+ *         int move (MoveAction.encode()), int visits, int wins
+ */
+public class DistributedSearch {
+
+    static final int SEARCH = 'S';
+    static final int CANCEL = 'C';
+
+    // How long after the deadline to wait for a worker's reply
+    private static final int REPLY_GRACE = 2000;
+    private static final int CONNECT_TIMEOUT = 1000;
+
+    private static final String WORKERS = System.getProperty("amazons.workers");
+    private static final int SPAWN_WORKERS = Integer.getInteger("amazons.spawnWorkers", 0);
+    private static final int WORKER_PORT = Integer.getInteger("amazons.workerPort", 32200);
+
+    private static List<InetSocketAddress> spawnedWorkers = null;
+
+    private final List<InetSocketAddress> workers;
+    private final Socket[] sockets;
+    private final DataInputStream[] inputs;
+    // outputs, pending and searchId are also read by cancel() on another thread, so they are only touched under this lock
+    private final DataOutputStream[] outputs;
+    private final boolean[] pending;
+    private int searchId = 0;
+    private long deadline;
+
+    public DistributedSearch(List<InetSocketAddress> workers) {
+        this.workers = workers;
+        this.sockets = new Socket[workers.size()];
+        this.inputs = new DataInputStream[workers.size()];
+        this.outputs = new DataOutputStream[workers.size()];
+        this.pending = new boolean[workers.size()];
+    }
+
+    // The workers configured with system properties, or null if there are none
+    public static DistributedSearch fromSystemProperties() {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        if (WORKERS != null) {
+            for (String worker : WORKERS.split(",")) {
+                String[] hostPort = worker.trim().split(":");
+                addresses.add(new InetSocketAddress(hostPort[0], Integer.parseInt(hostPort[1])));
+            }
+        }
+        if (SPAWN_WORKERS > 0) {
+            addresses.addAll(spawnLocalWorkers(SPAWN_WORKERS, WORKER_PORT));
+        }
+        return addresses.isEmpty() ? null : new DistributedSearch(addresses);
+    }
+
+    // Threads for the coordinator's own search: all cores, or one share of them if it spawns workers
+    public static int localThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / (SPAWN_WORKERS + 1));
+    }
+
+    // Starts worker JVMs on consecutive loopback ports, once per process. They are stopped when this JVM exits.
+    public static synchronized List<InetSocketAddress> spawnLocalWorkers(int count, int basePort) {
+        if (spawnedWorkers != null) {
+            return spawnedWorkers;
+        }
+        spawnedWorkers = new ArrayList<>();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        // The coordinator keeps one share of the cores for its own search
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / (count + 1));
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            for (String name : System.getProperties().stringPropertyNames()) {
+                if (name.startsWith("amazons.") && !name.equals("amazons.workers") && !name.equals("amazons.spawnWorkers")) {
+                    command.add("-D" + name + "=" + System.getProperty(name));
+                }
+            }
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(SearchWorker.class.getName());
+            command.add(Integer.toString(basePort + i));
+            command.add(Integer.toString(threads));
+            try {
+                processes.add(new ProcessBuilder(command).inheritIO().start());
+                spawnedWorkers.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), basePort + i));
+            } catch (IOException e) {
+                System.err.println("Could not start search worker: " + e.getMessage());
+            }
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> processes.forEach(Process::destroy)));
+        return spawnedWorkers;
+    }
+
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    /**
+     * Sends the position to every worker that can be reached. The workers search until the deadline;
+     * collect their results with merge. Returns the number of workers searching.
+     */
+    public int start(LocalBoard board, int moveChoices, int maxDepth, long deadline) {
+        this.deadline = deadline;
+        int id;
+        synchronized (this) {
+            id = ++searchId;
+        }
+        int started = 0;
+        for (int i = 0; i < workers.size(); i++) {
+            try {
+                if (sockets[i] == null) {
+                    connect(i);
+                }
+                DataOutputStream out;
+                synchronized (this) {
+                    out = outputs[i];
+                }
+                synchronized (out) {
+                    out.writeByte(SEARCH);
+                    out.writeInt(id);
+                    writeBoard(out, board);
+                    out.writeInt(moveChoices);
+                    out.writeInt(maxDepth);
+                    out.writeLong(deadline);
+                    out.flush();
+                }
+                synchronized (this) {
+                    pending[i] = true;
+                }
+                started++;
+            } catch (IOException e) {
+                System.err.println("Search worker " + workers.get(i) + " unavailable: " + e.getMessage());
+                disconnect(i);
+            }
+        }
+        return started;
+    }
+
+    /**
+     * Waits for the workers' replies and adds their root and root-child statistics to the given tree,
+     * adding children the local search did not expand. Returns the iterations the workers ran.
+     */
+    public long merge(TreeNode rootNode) {
+        Map<Integer, TreeNode> children = new HashMap<>();
+        for (TreeNode child : rootNode.children) {
+            children.put(child.action.encode(), child);
+        }
+
+        long iterations = 0;
+        for (int i = 0; i < workers.size(); i++) {
+            synchronized (this) {
+                if (!pending[i]) {
+                    continue;
+                }
+                pending[i] = false;
+            }
+            try {
+                sockets[i].setSoTimeout((int) Math.max(0, deadline - System.currentTimeMillis()) + REPLY_GRACE);
+                DataInputStream in = inputs[i];
+                iterations += in.readLong();
+                rootNode.visits += in.readInt();
+                rootNode.wins += in.readInt();
+                int count = in.readInt();
+                for (int c = 0; c < count; c++) {
+                    int move = in.readInt();
+                    int visits = in.readInt();
+                    int wins = in.readInt();
+                    TreeNode child = children.get(move);
+                    if (child == null) {
+                        // The workers expanded the root with the same top moves, so once their
+                        // children are in, the root has nothing left to expand
+                        rootNode.untriedMoves.clear();
+                        child = rootNode.addChild(MoveAction.decode(move));
+                        children.put(move, child);
+                    }
+                    child.visits += visits;
+                    child.wins += wins;
+                }
+            } catch (IOException e) {
+                System.err.println("No result from search worker " + workers.get(i) + ": " + e.getMessage());
+                disconnect(i);
+            }
+        }
+        return iterations;
+    }
+
+    // Asks every worker still searching to stop and reply now. Safe to call from any thread.
+    public void cancel() {
+        for (int i = 0; i < workers.size(); i++) {
+            DataOutputStream out;
+            int id;
+            synchronized (this) {
+                out = pending[i] ? outputs[i] : null;
+                id = searchId;
+            }
+            if (out == null) {
+                continue;
+            }
+            try {
+                // Tagged with the search, so a cancel that arrives after merge() can't stop the next one
+                synchronized (out) {
+                    out.writeByte(CANCEL);
+                    out.writeInt(id);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // The reply read in merge will fail too and drop the worker
+            }
+        }
+    }
+
+    private void connect(int i) throws IOException {
+        Socket socket = new Socket();
+        socket.connect(workers.get(i), CONNECT_TIMEOUT);
+        socket.setTcpNoDelay(true);
+        sockets[i] = socket;
+        inputs[i] = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        synchronized (this) {
+            outputs[i] = out;
+        }
+    }
+
+    private void disconnect(int i) {
+        synchronized (this) {
+            pending[i] = false;
+            outputs[i] = null;
+        }
+        if (sockets[i] != null) {
+            try {
+                sockets[i].close();
+            } catch (IOException e) {
+                // Already broken
+            }
+        }
+        sockets[i] = null;
+        inputs[i] = null;
+    }
+
+    static void writeBoard(DataOutputStream out, LocalBoard board) throws IOException {
+        int[][] state = board.getState();
+        for (int row = 1; row <= 10; row++) {
+            for (int col = 1; col <= 10; col++) {
+                out.writeByte(state[row][col]);
+            }
+        }
+        out.writeByte(board.getLocalPlayer());
+    }
+
+    static LocalBoard readBoard(DataInputStream in) throws IOException {
+        LocalBoard board = new LocalBoard();
+        int[][] state = board.getState();
+        for (int row = 1; row <= 10; row++) {
+            for (int col = 1; col <= 10; col++) {
+                state[row][col] = in.readByte();
+            }
+        }
+        board.setLocalPlayer(in.readByte());
+        return board;
+    }
+}
@@ -0,0 +1,78 @@
+package ubc.cosc322;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/* GameHost.java
+ *
+ * Runs several games in one process, with every search sharing one SearchScheduler pool.
+ *
+ * Given room names, it logs one headless MonteCarloPlayer into the server per room, each with its own
+ * GameClient session. With --local, it instead plays the given number of games between local players,
+ * each game refereed by a LocalReferee, so the whole setup can be tried without a server.
+ *
+ * Each player logs its games to game-records-<user name>.bin. Set the time per move with -Damazons.moveTime=<ms>.
+ * A local player only loses on time after twice that plus MOVE_TIMEOUT_GRACE, so only a hung player times out,
+ * not a slow first move.
+ *
+ * USAGE:
+ * java ubc.cosc322.GameHost <room>...
+ * java ubc.cosc322.GameHost --local <games>
+ */
+public class GameHost {
+
+    private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final long MOVE_TIMEOUT_GRACE = 10000;
+    private static final long MOVE_TIMEOUT = MonteCarloPlayer.MAX_TIME * 2 + MOVE_TIMEOUT_GRACE;
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: GameHost <room>...  |  GameHost --local <games>");
+            return;
+        }
+        SearchScheduler scheduler = new SearchScheduler(NUM_THREADS);
+        if (args[0].equals("--local")) {
+            playLocalGames(Integer.parseInt(args[1]), scheduler);
+            scheduler.shutdown();
+        } else {
+            for (String room : args) {
+                MonteCarloPlayer player = createPlayer("Player" + (int) (Math.random() * 10000), scheduler);
+                player.setRoomName(room);
+                player.Go();
+            }
+        }
+    }
+
+    private static MonteCarloPlayer createPlayer(String userName, SearchScheduler scheduler) {
+        MonteCarloPlayer player = new MonteCarloPlayer(userName, "2", false, scheduler);
+        player.setGameLogFile("game-records-" + userName + ".bin");
+        return player;
+    }
+
+    private static void playLocalGames(int games, SearchScheduler scheduler) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        int[] winners = new int[games];
+        for (int i = 0; i < games; i++) {
+            int game = i;
+            Thread thread = new Thread(() -> {
+                MonteCarloPlayer white = createPlayer("Local" + game + "-White", scheduler);
+                MonteCarloPlayer black = createPlayer("Local" + game + "-Black", scheduler);
+                LocalReferee referee = new LocalReferee(white, black, MOVE_TIMEOUT);
+                try {
+                    winners[game] = referee.play();
+                    System.out.println("Local game " + game + " winner: player " + winners[game]);
+                } catch (InterruptedException e) {
+                    System.err.println("Local game " + game + " interrupted");
+                } finally {
+                    white.shutdown();
+                    black.shutdown();
+                }
+            }, "local-game-" + game);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package ubc.cosc322;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/* GameRecordLog.java
+ *
+ * Appends played games to a compact binary log. Every record is RECORD_BYTES long (big-endian),
+ * so logs can be concatenated and read back in fixed-size chunks by GameRecordReader.
+ *
+ * RECORD LAYOUT:
+ * [0]      tag: GAME_START, MOVE or GAME_END
+ * [1]      player: our player for GAME_START (0 for self-play), the mover for MOVE, the winner for GAME_END
+ *          (0 if there is none, e.g. the game was stopped)
+ * [2]      GAME_END: why the game ended, one of the END_* codes
+ * [2..4]   MOVE: the move, MoveAction.encode() in 3 bytes
+ * [5..8]   MOVE: search iterations (0 if the move was not searched, e.g. an opponent or book move)
+ * [9..12]  MOVE: visits of the chosen root child
+ * [13..14] MOVE: win rate of the chosen root child, scaled to 0..65535
+ * [15]     MOVE: number of root children searched, capped at 255
+ * [5..12]  GAME_START: start time in epoch milliseconds
+ *
+ * Records are written straight to the file, so a game is kept up to the last move even if the JVM dies.
+ * Every game gets a GAME_END record: a game still open when the next one starts or the log is closed is
+ * ended with END_STOPPED, so a reader never runs two games together.
+ */
+public class GameRecordLog implements AutoCloseable {
+
+    public static final int RECORD_BYTES = 16;
+
+    public static final byte GAME_START = 'S';
+    public static final byte MOVE = 'M';
+    public static final byte GAME_END = 'E';
+
+    // GAME_END reasons
+    public static final int END_NO_MOVES = 0;
+    public static final int END_TIMEOUT = 1;
+    public static final int END_ILLEGAL_MOVE = 2;
+    public static final int END_STOPPED = 3;
+
+    private final FileChannel channel;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+    private boolean gameOpen = false;
+
+    public GameRecordLog(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Opens the log at the given path, or returns null (and logs nothing) if it cannot be opened
+    public static GameRecordLog open(Path path) {
+        try {
+            return new GameRecordLog(path);
+        } catch (IOException e) {
+            System.err.println("Could not open game record log " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public synchronized void gameStart(int ourPlayer) {
+        if (gameOpen) {
+            gameEnd(0, END_STOPPED);
+        }
+        gameOpen = true;
+        record.clear();
+        record.put(GAME_START).put((byte) ourPlayer).put((byte) 0).put((byte) 0).put((byte) 0);
+        record.putLong(System.currentTimeMillis());
+        write();
+    }
+
+    // A move that was not searched (an opponent's move, or a book move)
+    public void move(int mover, MoveAction action) {
+        move(mover, action, 0, 0, 0, 0);
+    }
+
+    public synchronized void move(int mover, MoveAction action, long iterations, int visits, double winRate, int rootChildren) {
+        int encoded = action.encode();
+        record.clear();
+        record.put(MOVE).put((byte) mover);
+        record.put((byte) (encoded >>> 16)).put((byte) (encoded >>> 8)).put((byte) encoded);
+        record.putInt((int) Math.min(iterations, Integer.MAX_VALUE));
+        record.putInt(visits);
+        record.putShort((short) Math.round(Math.max(0, Math.min(1, winRate)) * 0xFFFF));
+        record.put((byte) Math.min(rootChildren, 255));
+        write();
+    }
+
+    // The game ended because the player to move had no moves left
+    public void gameEnd(int winner) {
+        gameEnd(winner, END_NO_MOVES);
+    }
+
+    // Ends the current game. Does nothing if it has already ended.
+    public synchronized void gameEnd(int winner, int reason) {
+        if (!gameOpen) {
+            return;
+        }
+        gameOpen = false;
+        record.clear();
+        record.put(GAME_END).put((byte) winner).put((byte) reason);
+        write();
+    }
+
+    private void write() {
+        if (!channel.isOpen()) {
+            return;
+        }
+        // Zero whatever the record type left unused
+        while (record.hasRemaining()) {
+            record.put((byte) 0);
+        }
+        record.flip();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write game record: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            gameEnd(0, END_STOPPED);
+        }
+        channel.close();
+    }
+}
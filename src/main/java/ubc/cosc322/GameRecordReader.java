@@ -0,0 +1,162 @@
+package ubc.cosc322;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/* GameRecordReader.java
+ *
+ * Streams a GameRecordLog file through a memory mapping, replaying every game on a single LocalBoard.
+ * Games are never materialized: each record is decoded into one reused Record and handed to the
+ * visitor together with the position before the move. Large logs are mapped a window at a time, so
+ * files bigger than 2 GB work too.
+ *
+ * The board and record passed to the visitor are reused for the next record. Copy them if you need
+ * to keep them.
+ *
+ * USAGE:
+ * java ubc.cosc322.GameRecordReader <log file> [--moves]
+ */
+public class GameRecordReader {
+
+    // Window size; a multiple of RECORD_BYTES so records never straddle two windows
+    private static final long WINDOW_BYTES = (64L << 20) / GameRecordLog.RECORD_BYTES * GameRecordLog.RECORD_BYTES;
+
+    public interface Visitor {
+        void onRecord(Record record, LocalBoard board);
+    }
+
+    // One decoded record. Which fields are set depends on the tag (see GameRecordLog).
+    public static class Record {
+        public byte tag;
+        public int player;
+        public int move;
+        public int iterations;
+        public int visits;
+        public double winRate;
+        public int rootChildren;
+        public long startTime;
+        public int endReason;
+    }
+
+    private final Path path;
+
+    public GameRecordReader(Path path) {
+        this.path = path;
+    }
+
+    // Replays the whole log, returning the number of records read
+    public long replay(Visitor visitor) throws IOException {
+        Record record = new Record();
+        LocalBoard board = new LocalBoard();
+        long count = 0;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size() / GameRecordLog.RECORD_BYTES * GameRecordLog.RECORD_BYTES;
+            if (size != channel.size()) {
+                System.err.println("Ignoring a partial record at the end of " + path);
+            }
+
+            for (long position = 0; position < size; position += WINDOW_BYTES) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_BYTES, size - position));
+                for (int offset = 0; offset < window.limit(); offset += GameRecordLog.RECORD_BYTES) {
+                    decode(window, offset, record);
+                    if (record.tag == GameRecordLog.GAME_START) {
+                        board.reset();
+                    } else if (record.tag == GameRecordLog.MOVE) {
+                        board.setLocalPlayer(record.player);
+                    }
+
+                    visitor.onRecord(record, board);
+
+                    if (record.tag == GameRecordLog.MOVE) {
+                        board.applyMove(record.move);
+                    }
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void decode(MappedByteBuffer buffer, int offset, Record record) {
+        record.tag = buffer.get(offset);
+        record.player = buffer.get(offset + 1);
+        if (record.tag == GameRecordLog.GAME_START) {
+            record.startTime = buffer.getLong(offset + 5);
+            return;
+        }
+        if (record.tag == GameRecordLog.GAME_END) {
+            record.endReason = buffer.get(offset + 2);
+            return;
+        }
+        record.move = ((buffer.get(offset + 2) & 0xFF) << 16) | ((buffer.get(offset + 3) & 0xFF) << 8) | (buffer.get(offset + 4) & 0xFF);
+        record.iterations = buffer.getInt(offset + 5);
+        record.visits = buffer.getInt(offset + 9);
+        record.winRate = (buffer.getShort(offset + 13) & 0xFFFF) / (double) 0xFFFF;
+        record.rootChildren = buffer.get(offset + 15) & 0xFF;
+    }
+
+    private static String endReasonName(int reason) {
+        switch (reason) {
+            case GameRecordLog.END_NO_MOVES:
+                return "no moves left";
+            case GameRecordLog.END_TIMEOUT:
+                return "timeout";
+            case GameRecordLog.END_ILLEGAL_MOVE:
+                return "illegal move";
+            case GameRecordLog.END_STOPPED:
+                return "stopped";
+            default:
+                return "reason " + reason;
+        }
+    }
+
+    // Prints a summary of a log, optionally with every move
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: GameRecordReader <log file> [--moves]");
+            return;
+        }
+        boolean printMoves = args.length > 1 && args[1].equals("--moves");
+        long[] totals = new long[6]; // games, positions, white wins, black wins, searched moves, games without a winner
+
+        long records = new GameRecordReader(Paths.get(args[0])).replay((record, board) -> {
+            switch (record.tag) {
+                case GameRecordLog.GAME_START:
+                    totals[0]++;
+                    if (printMoves) {
+                        System.out.println("Game " + totals[0] + " (our player: " + record.player + ")");
+                    }
+                    break;
+                case GameRecordLog.MOVE:
+                    totals[1]++;
+                    if (record.iterations > 0) {
+                        totals[4]++;
+                    }
+                    if (printMoves) {
+                        System.out.printf("  %d: %s  iterations: %d  visits: %d  win rate: %.2f%%%n", record.player,
+                                MoveAction.decode(record.move), record.iterations, record.visits, 100 * record.winRate);
+                    }
+                    break;
+                case GameRecordLog.GAME_END:
+                    totals[record.player == LocalBoard.QUEEN_PLAYER_1 ? 2 : record.player == LocalBoard.QUEEN_PLAYER_2 ? 3 : 5]++;
+                    if (printMoves) {
+                        System.out.println("  Winner: " + (record.player != 0 ? record.player : "none")
+                                + " (" + endReasonName(record.endReason) + ")");
+                    }
+                    break;
+                default:
+                    System.err.println("Unknown record tag: " + record.tag);
+            }
+        });
+
+        System.out.println("Records: " + records);
+        System.out.println("Games: " + totals[0] + "  (white wins: " + totals[2] + ", black wins: " + totals[3]
+                + ", no winner: " + totals[5] + ")");
+        System.out.println("Positions: " + totals[1] + "  (searched: " + totals[4] + ")");
+    }
+}
@@ -0,0 +1,269 @@
+package ubc.cosc322;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/* HeuristicTuner.java
+ *
+ * Fits the move-ranking HeuristicWeights to played games and writes them to a properties file that
+ * MonteCarloSearch loads at startup.
+ *
+ * Every move in the game logs (see GameRecordLog) is one labelled sample: the raw heuristic terms of the
+ * move played, and whether the player who played it went on to win. Positions are streamed from the logs
+ * in chunks, and the terms of each chunk are computed in parallel with fork/join into primitive arrays.
+ * Games without a recorded winner are skipped.
+ *
+ * The weights are then fitted by local search (coordinate descent with shrinking steps) to minimize the
+ * logistic loss of sigmoid(SCALE * score + bias) against the labels. The score is linear in three terms,
+ * so only three of its weights are independent: blocking.weight and SCALE are held fixed, and mobility.weight,
+ * blocking.factor and blocked.queen.bonus are fitted (kept non-negative), with the bias. The bias is not
+ * written. Each loss evaluation is a parallel fork/join sum over the arrays.
+ *
+ * USAGE:
+ * java ubc.cosc322.HeuristicTuner <output file> <game log>...
+ */
+public class HeuristicTuner {
+
+    private static final int CHUNK_SIZE = 4096;
+    private static final int SEQUENTIAL_THRESHOLD = 4096;
+    private static final int TERMS_THRESHOLD = 256;
+    private static final int MAX_ROUNDS = 200;
+    private static final double MIN_STEP = 1e-4;
+    // Fixed slope of the logistic model; the fitted weights absorb any other scale
+    private static final double SCALE = 0.01;
+
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    // Samples: raw heuristic terms of the move played, and 1 if the mover won (-1 until the game ends)
+    private float[] mobility = new float[CHUNK_SIZE];
+    private float[] blockingEffect = new float[CHUNK_SIZE];
+    private float[] blockedQueens = new float[CHUNK_SIZE];
+    private byte[] labels = new byte[CHUNK_SIZE];
+    private byte[] movers = new byte[CHUNK_SIZE];
+    private int size = 0;
+
+    // Positions waiting for their terms to be computed
+    private final byte[] chunkBoards = new byte[CHUNK_SIZE * LocalBoard.SQUARES];
+    private final int[] chunkMoves = new int[CHUNK_SIZE];
+    private int chunkStart = 0;
+    private int gameStart = 0;
+
+    public void read(String logFile) throws IOException {
+        new GameRecordReader(Paths.get(logFile)).replay((record, board) -> {
+            if (record.tag == GameRecordLog.GAME_START) {
+                // Drop the unfinished previous game, if any
+                for (int i = gameStart; i < size; i++) {
+                    labels[i] = -1;
+                }
+                gameStart = size;
+            } else if (record.tag == GameRecordLog.MOVE) {
+                addPosition(board, record.move, record.player);
+            } else if (record.tag == GameRecordLog.GAME_END) {
+                // A game stopped without a winner stays unlabelled
+                for (int i = gameStart; i < size; i++) {
+                    labels[i] = (record.player != 0) ? (byte) (movers[i] == record.player ? 1 : 0) : -1;
+                }
+                gameStart = size;
+            }
+        });
+        flushChunk();
+        for (int i = gameStart; i < size; i++) {
+            labels[i] = -1;
+        }
+        gameStart = size;
+    }
+
+    private void addPosition(LocalBoard board, int move, int mover) {
+        if (size == labels.length) {
+            int capacity = size * 2;
+            mobility = Arrays.copyOf(mobility, capacity);
+            blockingEffect = Arrays.copyOf(blockingEffect, capacity);
+            blockedQueens = Arrays.copyOf(blockedQueens, capacity);
+            labels = Arrays.copyOf(labels, capacity);
+            movers = Arrays.copyOf(movers, capacity);
+        }
+        int lane = size - chunkStart;
+        int[][] state = board.getState();
+        for (int row = 1; row <= 10; row++) {
+            for (int col = 1; col <= 10; col++) {
+                chunkBoards[lane * LocalBoard.SQUARES + LocalBoard.toSquare(row, col)] = (byte) state[row][col];
+            }
+        }
+        chunkMoves[lane] = move;
+        movers[size] = (byte) mover;
+        labels[size] = -1;
+        size++;
+
+        if (size - chunkStart == CHUNK_SIZE) {
+            flushChunk();
+        }
+    }
+
+    private void flushChunk() {
+        pool.invoke(new TermsTask(0, size - chunkStart));
+        chunkStart = size;
+    }
+
+    // Computes the heuristic terms for positions [from, to) of the current chunk
+    @SuppressWarnings("serial")
+    private class TermsTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+
+        TermsTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > TERMS_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TermsTask(from, mid), new TermsTask(mid, to));
+                return;
+            }
+            LocalBoard board = new LocalBoard();
+            int[][] state = board.getState();
+            for (int lane = from; lane < to; lane++) {
+                for (int row = 1; row <= 10; row++) {
+                    for (int col = 1; col <= 10; col++) {
+                        state[row][col] = chunkBoards[lane * LocalBoard.SQUARES + LocalBoard.toSquare(row, col)];
+                    }
+                }
+                int index = chunkStart + lane;
+                board.setLocalPlayer(movers[index]);
+                MoveAction action = MoveAction.decode(chunkMoves[lane]);
+                int[] terms = MonteCarloSearch.blockingTerms(board, action);
+                mobility[index] = MonteCarloSearch.queenMobility(board, action.getQueenTarget()) * 3;
+                blockingEffect[index] = terms[0];
+                blockedQueens[index] = terms[1];
+            }
+        }
+    }
+
+    // Mean logistic loss over all labelled samples for the given weights and bias
+    public double loss(HeuristicWeights weights, double bias) {
+        double[] sums = pool.invoke(new LossTask(weights, bias, 0, size));
+        return (sums[1] > 0) ? sums[0] / sums[1] : 0;
+    }
+
+    // Sums {loss, labelled samples} over samples [from, to)
+    @SuppressWarnings("serial")
+    private class LossTask extends RecursiveTask<double[]> {
+        private final HeuristicWeights weights;
+        private final double bias;
+        private final int from;
+        private final int to;
+
+        LossTask(HeuristicWeights weights, double bias, int from, int to) {
+            this.weights = weights;
+            this.bias = bias;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from > SEQUENTIAL_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                LossTask left = new LossTask(weights, bias, from, mid);
+                left.fork();
+                double[] right = new LossTask(weights, bias, mid, to).compute();
+                double[] sums = left.join();
+                sums[0] += right[0];
+                sums[1] += right[1];
+                return sums;
+            }
+            double loss = 0;
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                if (labels[i] < 0) {
+                    continue;
+                }
+                double z = SCALE * weights.score(mobility[i], blockingEffect[i], blockedQueens[i]) + bias;
+                // log(1 + e^-z) for a win, log(1 + e^z) for a loss, computed without overflow
+                double signed = (labels[i] == 1) ? -z : z;
+                loss += Math.max(signed, 0) + Math.log1p(Math.exp(-Math.abs(signed)));
+                count++;
+            }
+            return new double[] { loss, count };
+        }
+    }
+
+    // Fitted parameters: {mobility.weight, blocking.factor, blocked.queen.bonus, bias}
+    private static HeuristicWeights toWeights(double[] params, double blockingWeight) {
+        return new HeuristicWeights(params[0], blockingWeight, params[1], params[2]);
+    }
+
+    // Coordinate descent from the given weights, keeping their blocking weight. Returns the fitted weights.
+    public HeuristicWeights fit(HeuristicWeights start) {
+        double blockingWeight = start.blockingWeight;
+        double[] params = { start.mobilityWeight, start.blockingFactor, start.blockedQueenBonus, 0 };
+        int bias = params.length - 1;
+        double[] steps = new double[params.length];
+        for (int i = 0; i < params.length; i++) {
+            steps[i] = Math.max(Math.abs(params[i]) * 0.25, 0.01);
+        }
+
+        double best = loss(toWeights(params, blockingWeight), params[bias]);
+        System.out.printf("Initial loss: %.6f%n", best);
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            boolean moving = false;
+            for (int i = 0; i < params.length; i++) {
+                if (steps[i] < MIN_STEP) {
+                    continue;
+                }
+                moving = true;
+                double original = params[i];
+                boolean improved = false;
+                for (double candidate : new double[] { original + steps[i], original - steps[i] }) {
+                    // The weights reward mobility and blocking, so they stay non-negative
+                    if (i != bias && candidate < 0) {
+                        continue;
+                    }
+                    params[i] = candidate;
+                    double candidateLoss = loss(toWeights(params, blockingWeight), params[bias]);
+                    if (candidateLoss < best) {
+                        best = candidateLoss;
+                        original = candidate;
+                        improved = true;
+                        break;
+                    }
+                }
+                params[i] = original;
+                if (!improved) {
+                    steps[i] /= 2;
+                }
+            }
+            if (!moving) {
+                break;
+            }
+            System.out.printf("Round %d loss: %.6f%n", round + 1, best);
+        }
+        return toWeights(params, blockingWeight);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: HeuristicTuner <output file> <game log>...");
+            return;
+        }
+        HeuristicTuner tuner = new HeuristicTuner();
+        long start = System.currentTimeMillis();
+        for (int i = 1; i < args.length; i++) {
+            tuner.read(args[i]);
+        }
+        long readMillis = Math.max(1, System.currentTimeMillis() - start);
+        System.out.println("Read " + tuner.size + " positions in " + readMillis + " ms ("
+                + (tuner.size * 1000L / readMillis) + " positions/sec)");
+
+        HeuristicWeights weights = tuner.fit(HeuristicWeights.load());
+        System.out.println("Fitted weights: " + weights);
+        System.out.println("Total time: " + (System.currentTimeMillis() - start) + " ms");
+        weights.save(Paths.get(args[0]), "Fitted by HeuristicTuner on " + tuner.size + " positions");
+    }
+}
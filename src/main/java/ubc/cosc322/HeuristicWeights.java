@@ -0,0 +1,86 @@
+package ubc.cosc322;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/* HeuristicWeights.java
+ *
+ * The weights MonteCarloSearch uses to rank moves for expansion:
+ *
+ *     score = mobilityWeight * mobility + blockingWeight * (blockingFactor * blockingEffect + blockedQueenBonus * blockedQueens)
+ *
+ * They are read at startup from heuristics.properties in the working directory (or the file given by
+ * -Damazons.heuristics=<path>), which HeuristicTuner writes. Missing keys keep the hand-picked defaults.
+ */
+public class HeuristicWeights {
+
+    public static final String FILE = System.getProperty("amazons.heuristics", "heuristics.properties");
+
+    public static final HeuristicWeights DEFAULT = new HeuristicWeights(0.5, 1.0, 2, 15);
+
+    public final double mobilityWeight;
+    public final double blockingWeight;
+    public final double blockingFactor;
+    public final double blockedQueenBonus;
+
+    public HeuristicWeights(double mobilityWeight, double blockingWeight, double blockingFactor, double blockedQueenBonus) {
+        this.mobilityWeight = mobilityWeight;
+        this.blockingWeight = blockingWeight;
+        this.blockingFactor = blockingFactor;
+        this.blockedQueenBonus = blockedQueenBonus;
+    }
+
+    // Loads the weights from FILE, or returns DEFAULT if there is no such file
+    public static HeuristicWeights load() {
+        Path path = Paths.get(FILE);
+        if (!Files.isRegularFile(path)) {
+            return DEFAULT;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+            HeuristicWeights weights = new HeuristicWeights(
+                    get(properties, "mobility.weight", DEFAULT.mobilityWeight),
+                    get(properties, "blocking.weight", DEFAULT.blockingWeight),
+                    get(properties, "blocking.factor", DEFAULT.blockingFactor),
+                    get(properties, "blocked.queen.bonus", DEFAULT.blockedQueenBonus));
+            System.out.println("Loaded heuristic weights from " + path + ": " + weights);
+            return weights;
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Could not load heuristic weights " + path + ", using defaults: " + e.getMessage());
+            return DEFAULT;
+        }
+    }
+
+    private static double get(Properties properties, String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        return (value != null) ? Double.parseDouble(value.trim()) : defaultValue;
+    }
+
+    public void save(Path path, String comment) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("mobility.weight", Double.toString(mobilityWeight));
+        properties.setProperty("blocking.weight", Double.toString(blockingWeight));
+        properties.setProperty("blocking.factor", Double.toString(blockingFactor));
+        properties.setProperty("blocked.queen.bonus", Double.toString(blockedQueenBonus));
+        try (OutputStream out = Files.newOutputStream(path)) {
+            properties.store(out, comment);
+        }
+    }
+
+    // Score of a move from its raw heuristic terms
+    public double score(double mobility, double blockingEffect, double blockedQueens) {
+        return mobilityWeight * mobility + blockingWeight * (blockingFactor * blockingEffect + blockedQueenBonus * blockedQueens);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("mobility %.4f, blocking %.4f, blocking factor %.4f, blocked queen bonus %.4f",
+                mobilityWeight, blockingWeight, blockingFactor, blockedQueenBonus);
+    }
+}
@@ -2,6 +2,7 @@ package ubc.cosc322;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 /* AmazonsLocalBoard.java
  *
@@ -21,6 +22,7 @@ import java.util.List;
  */
 public class LocalBoard {
     private static final int BOARD_SIZE = 10;
+    public static final int SQUARES = BOARD_SIZE * BOARD_SIZE;
 
     public static final int EMPTY = 0;
     public static final int QUEEN_PLAYER_1 = 1; // White
@@ -29,6 +31,23 @@ public class LocalBoard {
     public int localPlayer = -100;
     private int[][] state = new int[BOARD_SIZE + 1][BOARD_SIZE + 1];
 
+    // Zobrist keys for hash(): one per (square, white queen / black queen / arrow), plus one per player to move.
+    // The seed is fixed so hashes stay the same across runs (opening books are keyed by them).
+    private static final long[][] ZOBRIST_SQUARE = new long[SQUARES][3];
+    private static final long[] ZOBRIST_PLAYER = new long[3];
+
+    static {
+        Random zobristRandom = new Random(322);
+        for (long[] keys : ZOBRIST_SQUARE) {
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = zobristRandom.nextLong();
+            }
+        }
+        for (int i = 0; i < ZOBRIST_PLAYER.length; i++) {
+            ZOBRIST_PLAYER[i] = zobristRandom.nextLong();
+        }
+    }
+
     public LocalBoard() {
         initializeDefaultBoard();
     }
@@ -54,6 +73,11 @@ public class LocalBoard {
 		state[7][10] = QUEEN_PLAYER_2;
     }
 
+    // Puts the board back to the starting position
+    public void reset() {
+        initializeDefaultBoard();
+    }
+
     public int[][] getState() {
         return state;
     }
@@ -77,6 +101,19 @@ public class LocalBoard {
 		setPositionValue(arrowTarget, -1);
 	}
 
+    // Same as updateState, for a move packed by MoveAction.encode()
+    public void applyMove(int encodedMove) {
+        int queenCurrent = encodedMove & 0x7F;
+        int queenTarget = (encodedMove >>> 7) & 0x7F;
+        int arrowTarget = (encodedMove >>> 14) & 0x7F;
+
+        int[] current = state[queenCurrent / BOARD_SIZE + 1];
+        int playerColor = current[queenCurrent % BOARD_SIZE + 1];
+        current[queenCurrent % BOARD_SIZE + 1] = EMPTY;
+        state[queenTarget / BOARD_SIZE + 1][queenTarget % BOARD_SIZE + 1] = playerColor;
+        state[arrowTarget / BOARD_SIZE + 1][arrowTarget % BOARD_SIZE + 1] = -1;
+    }
+
     public int getPositionValue(List<Integer> position) {
         return state[position.get(0)][position.get(1)];
     }
@@ -89,6 +126,34 @@ public class LocalBoard {
         state[position.get(0)][position.get(1)] = value;
     }
 
+    // Converts a 1-indexed (row, col) position into a 0-based square index in [0, SQUARES)
+    public static int toSquare(int row, int col) {
+        return (row - 1) * BOARD_SIZE + (col - 1);
+    }
+
+    public static int toSquare(List<Integer> position) {
+        return toSquare(position.get(0), position.get(1));
+    }
+
+    // Converts a square index back into a 1-indexed [row, col] position
+    public static List<Integer> toPosition(int square) {
+        return Arrays.asList(square / BOARD_SIZE + 1, square % BOARD_SIZE + 1);
+    }
+
+    // 64-bit Zobrist hash of the queens, arrows and the player to move
+    public long hash() {
+        long hash = (localPlayer == QUEEN_PLAYER_1 || localPlayer == QUEEN_PLAYER_2) ? ZOBRIST_PLAYER[localPlayer] : ZOBRIST_PLAYER[0];
+        for (int i = 1; i <= BOARD_SIZE; i++) {
+            for (int j = 1; j <= BOARD_SIZE; j++) {
+                int value = state[i][j];
+                if (value != EMPTY) {
+                    hash ^= ZOBRIST_SQUARE[toSquare(i, j)][value == -1 ? 0 : value];
+                }
+            }
+        }
+        return hash;
+    }
+
     public void printState() {
 		System.out.println("LOCAL BOARD STATE AFTER " + localPlayer + "'s MOVE:");
         for (int i = BOARD_SIZE; i >= 1; i--) {
@@ -97,6 +162,48 @@ public class LocalBoard {
         System.out.println();
     }
 
+    // Text form used by benchmark suites: 10 rows, top row (row 10) first, one character per square.
+    // '.' is empty, 'W' a white queen, 'B' a black queen and 'X' an arrow.
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = BOARD_SIZE; i >= 1; i--) {
+            for (int j = 1; j <= BOARD_SIZE; j++) {
+                int value = state[i][j];
+                text.append(value == QUEEN_PLAYER_1 ? 'W' : value == QUEEN_PLAYER_2 ? 'B' : value == -1 ? 'X' : '.');
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    // Reads a board written by toText, with the given player to move
+    public static LocalBoard fromText(List<String> rows, int playerToMove) {
+        if (rows.size() != BOARD_SIZE) {
+            throw new IllegalArgumentException("Expected " + BOARD_SIZE + " rows, got " + rows.size());
+        }
+        LocalBoard board = new LocalBoard();
+        for (int r = 0; r < BOARD_SIZE; r++) {
+            String row = rows.get(r).trim();
+            if (row.length() != BOARD_SIZE) {
+                throw new IllegalArgumentException("Expected " + BOARD_SIZE + " squares in row: " + row);
+            }
+            for (int j = 1; j <= BOARD_SIZE; j++) {
+                char c = row.charAt(j - 1);
+                int value;
+                switch (c) {
+                    case '.': value = EMPTY; break;
+                    case 'W': value = QUEEN_PLAYER_1; break;
+                    case 'B': value = QUEEN_PLAYER_2; break;
+                    case 'X': value = -1; break;
+                    default: throw new IllegalArgumentException("Unknown square '" + c + "' in row: " + row);
+                }
+                board.state[BOARD_SIZE - r][j] = value;
+            }
+        }
+        board.setLocalPlayer(playerToMove);
+        return board;
+    }
+
     public LocalBoard copy() {
         LocalBoard copy = new LocalBoard();
         copy.localPlayer = localPlayer;
@@ -0,0 +1,100 @@
+package ubc.cosc322;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import ygraph.ai.smartfox.games.GameMessage;
+import ygraph.ai.smartfox.games.amazons.AmazonsGameMessage;
+
+/* LocalReferee.java
+ *
+ * Stands in for the game server so two players can play each other in one process, without a network.
+ * It sends both players the same start and move messages the server would, checks every move on its
+ * own board, and declares the winner when the player to move has no moves left. A player that sends an
+ * illegal move, or no move within the time limit, loses.
+ *
+ * Players must be created headless (no GUI) and must not be connected to the server.
+ */
+public class LocalReferee {
+
+    private final BasePlayer white;
+    private final BasePlayer black;
+    private final long moveTimeoutMillis;
+    private final LocalBoard board = new LocalBoard();
+    private final BlockingQueue<Map<String, Object>> moves = new LinkedBlockingQueue<>();
+    private int endReason = GameRecordLog.END_STOPPED;
+
+    public LocalReferee(BasePlayer white, BasePlayer black, long moveTimeoutMillis) {
+        this.white = white;
+        this.black = black;
+        this.moveTimeoutMillis = moveTimeoutMillis;
+    }
+
+    // Plays the game to the end and returns the winner (1 for white, 2 for black)
+    public int play() throws InterruptedException {
+        int winner = 0;
+        try {
+            winner = runGame();
+            return winner;
+        } finally {
+            // Nobody should still be thinking about a finished game, and both logs get its end
+            white.gameOver(winner, endReason);
+            black.gameOver(winner, endReason);
+        }
+    }
+
+    private int runGame() throws InterruptedException {
+        white.setMoveSender(moves::add);
+        black.setMoveSender(moves::add);
+
+        Map<String, Object> start = new HashMap<>();
+        start.put(AmazonsGameMessage.PLAYER_WHITE, white.userName());
+        start.put(AmazonsGameMessage.PLAYER_BLACK, black.userName());
+        white.handleGameMessage(GameMessage.GAME_ACTION_START, start);
+        black.handleGameMessage(GameMessage.GAME_ACTION_START, start);
+
+        // Black moves first
+        int toMove = LocalBoard.QUEEN_PLAYER_2;
+        while (true) {
+            int opponent = (toMove == 1) ? 2 : 1;
+            if (!new MoveActionFactory(board.getState(), toMove).hasMoves()) {
+                endReason = GameRecordLog.END_NO_MOVES;
+                return opponent;
+            }
+
+            Map<String, Object> moveMsg = moves.poll(moveTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (moveMsg == null) {
+                System.out.println("Referee: player " + toMove + " ran out of time.");
+                endReason = GameRecordLog.END_TIMEOUT;
+                return opponent;
+            }
+
+            MoveAction action = new MoveAction(
+                    position(moveMsg, AmazonsGameMessage.QUEEN_POS_CURR),
+                    position(moveMsg, AmazonsGameMessage.QUEEN_POS_NEXT),
+                    position(moveMsg, AmazonsGameMessage.ARROW_POS));
+            if (!new MoveActionFactory(board.getState(), toMove).isLegal(action)) {
+                System.out.println("Referee: illegal move by player " + toMove + ": " + action);
+                endReason = GameRecordLog.END_ILLEGAL_MOVE;
+                return opponent;
+            }
+            board.updateState(action);
+
+            Map<String, Object> forwarded = new HashMap<>();
+            forwarded.put(AmazonsGameMessage.QUEEN_POS_CURR, new ArrayList<>(action.getQueenCurrent()));
+            forwarded.put(AmazonsGameMessage.QUEEN_POS_NEXT, new ArrayList<>(action.getQueenTarget()));
+            forwarded.put(AmazonsGameMessage.ARROW_POS, new ArrayList<>(action.getArrowTarget()));
+            (opponent == 1 ? white : black).handleGameMessage(GameMessage.GAME_ACTION_MOVE, forwarded);
+            toMove = opponent;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Integer> position(Map<String, Object> moveMsg, String key) {
+        return new ArrayList<>((List<Integer>) moveMsg.get(key));
+    }
+}
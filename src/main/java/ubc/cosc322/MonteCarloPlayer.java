@@ -1,58 +1,78 @@
 package ubc.cosc322;
 
-import java.awt.Point;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 import ygraph.ai.smartfox.games.amazons.AmazonsGameMessage;
 
 /**
  * MonteCarloPlayer.java
  * 
  * A Monte Carlo Tree Search (MCTS) based player for the Game of Amazons.
- * This player uses a combination of heuristics:
- * - Queen mobility: favoring moves that leave the queen with many options.
- * - Opponent blocking: preferring moves that reduce opponent mobility.
- * - Territory control: evaluating the long-term board control (via a flood-fill).
- *
- * The code uses a selective search over a subset of possible moves.
+ * Each move is chosen by a MonteCarloSearch from the current position. The search starts out
+ * wide and shallow, and gets wider and deeper as the game goes on and the branching factor drops
+ * (see the schedule in MonteCarloSearch).
  */
 public class MonteCarloPlayer extends BasePlayer {
 
-    // MCTS parameters.
-    private static final long MAX_TIME = 10 * 2800;
+    // MCTS parameters. The time per move can be overridden with -Damazons.moveTime=<ms>.
+    public static final long MAX_TIME = Long.getLong("amazons.moveTime", 10 * 2800);
     private static final long MAX_MEMORY = 7L * 1024 * 1024 * 1024;
-    private static final int SIMULATION_DEPTH = 25;
 
-    private static int MOVE_CHOICES = 15;
-    private static int INCREASE_MOVE_CHOICES = 5;
-    private static int MAX_DEPTH = 1;
-    private static int INCREASE_MAX_DEPTH_AFTER = 10;
+    // Our moves so far, which set the search width and depth. Kept per player so one process can host several games.
+    private int moveCounter = 0;
 
-    // Heuristic weights.
-    private static final double MOBILITY_WEIGHT = 0.5;
-    private static final double BLOCKING_WEIGHT = 1.0;
+    // All cores, or one share of them when the player spawns search workers (see DistributedSearch)
+    private static final int NUM_THREADS = DistributedSearch.localThreads();
 
-    private Random random = new Random();
-    private static int moveCounter = 0;
+    // Deterministic mode: with -Damazons.iterations=<n>, every search runs exactly n iterations on one
+    // thread instead of MAX_TIME on all cores, with playouts seeded by -Damazons.seed=<seed> (default 322).
+    private static final long FIXED_ITERATIONS = Long.getLong("amazons.iterations", 0);
+    private static final long SEARCH_SEED = Long.getLong("amazons.seed", 322);
 
-    private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
-    private final AtomicLong iterationCount = new AtomicLong(0);
+    // Opening book, consulted before searching. Build one with OpeningBookBuilder.
+    private static final String OPENING_BOOK_FILE = System.getProperty("amazons.book", "opening-book.bin");
+
+    // Search tree snapshots. When a directory is set, every search tree is saved there (named by the
+    // position hash), and a saved tree for the current position is used as a warm start.
+    private static final String SNAPSHOT_DIR = System.getProperty("amazons.snapshot.dir");
+    private static final int SNAPSHOT_MAX_DEPTH = Integer.getInteger("amazons.snapshot.depth", 3);
+    private static final int SNAPSHOT_MIN_VISITS = Integer.getInteger("amazons.snapshot.minVisits", 10);
+
+    private final OpeningBook openingBook;
+
+    // Shared worker pool when hosting several games (see GameHost), or null to use a pool per search.
+    private final SearchScheduler scheduler;
+
+    // Searches run here, off the game loop, so messages keep being handled while we think.
+    private final ExecutorService searchThread;
+    private volatile MonteCarloSearch pendingSearch = null;
+
+    // Worker processes that search alongside us (see DistributedSearch), or null to search alone
+    private final DistributedSearch distributedSearch = DistributedSearch.fromSystemProperties();
 
     public MonteCarloPlayer(String userName, String passwd) {
-        super(userName, passwd);
+        this(userName, passwd, true, null);
+    }
+
+    public MonteCarloPlayer(String userName, String passwd, boolean showGui, SearchScheduler scheduler) {
+        super(userName, passwd, showGui);
+        this.scheduler = scheduler;
+        this.searchThread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-" + userName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.openingBook = OpeningBook.load(Paths.get(OPENING_BOOK_FILE));
+        // Compile the hot paths before the first move (-Damazons.warmup=<ms>)
+        SearchWarmup.runOnce(SearchWarmup.WARMUP_TIME);
     }
     
     @Override
@@ -61,360 +81,162 @@ public class MonteCarloPlayer extends BasePlayer {
         LocalBoard rootBoard = localBoard.copy();
         int ourPlayer = localBoard.getLocalPlayer();
         System.out.println("Our Player: " + ourPlayer);
-    
-        TreeNode rootNode = new TreeNode(rootBoard, null, null);
-        System.out.println("Starting MCTS with " + MAX_TIME/1000 + " seconds and " + NUM_THREADS + " threads.");
-    
-        // Create thread pool. This allows multiple threads to run.
-        // Currently increases our iterations by around 45%
-        ExecutorService executor = Executors.newWorkStealingPool(NUM_THREADS);
-        long startTime = System.currentTimeMillis();
-        iterationCount.set(0);
-    
-        for (int i = 0; i < NUM_THREADS; i++) {
-            executor.submit(() -> {
-                long endTime = startTime + MAX_TIME;
-                while (System.currentTimeMillis() < endTime) {
-                    
-                    // Step 1: Selection
-                    TreeNode selectedNode;
-                    synchronized (rootNode) {
-                        selectedNode = treePolicy(rootNode);
-                    }
-                    
-                    // Step 2: Simulation
-                    LocalBoard simulationBoard = selectedNode.board.copy();
-                    boolean simulationResult = simulatePlayout(simulationBoard, ourPlayer);
-                    int result = simulationResult ? 1 : 0;
-                    
-                    // Step 3: Backpropagation
-                    backpropagate(selectedNode, result);
-                    iterationCount.incrementAndGet();
-                }
-            });
-        }
-    
-        executor.shutdown();
-        try {
-            executor.awaitTermination(MAX_TIME + 1000, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            System.err.println("Thread execution interrupted: " + e.getMessage());
+
+        if (recordGameEndIfOver(ourPlayer)) {
+            System.out.println("No moves left, game over.");
+            return;
         }
-    
-        System.out.println("MCTS iterations: " + iterationCount.get());
-        printBestMoves(rootNode);
-    
-        TreeNode bestChild = null;
-        double bestScore = -1;
-        for (TreeNode child : rootNode.children) {
-            double winRatio = (child.visits > 0) ? ((double) child.wins / (double) child.visits) : 0.5;
-            if (winRatio > bestScore) {
-                bestScore = winRatio;
-                bestChild = child;
+
+        MoveAction bookMove = (openingBook != null) ? openingBook.lookup(rootBoard, OpeningBook.MIN_VISITS) : null;
+        if (bookMove != null) {
+            System.out.println("Playing book move: " + bookMove);
+            if (gameLog != null) {
+                gameLog.move(ourPlayer, bookMove);
             }
-        }
-    
-        if (bestChild == null || bestChild.action == null) {
-            System.out.println("No valid move selected by MCTS!");
+            sendMove(bookMove);
             return;
         }
     
-        MoveAction moveAction = bestChild.action;
-        localBoard.updateState(moveAction);
-    
-        Map<String, Object> moveMsg = new HashMap<>();
-        moveMsg.put(AmazonsGameMessage.QUEEN_POS_CURR, new ArrayList<>(moveAction.getQueenCurrent()));
-        moveMsg.put(AmazonsGameMessage.QUEEN_POS_NEXT, new ArrayList<>(moveAction.getQueenTarget()));
-        moveMsg.put(AmazonsGameMessage.ARROW_POS, new ArrayList<>(moveAction.getArrowTarget()));
-    
-        gamegui.updateGameState(moveMsg);
-        gameClient.sendMoveMessage(moveMsg);
-        MOVE_CHOICES += INCREASE_MOVE_CHOICES;
-        
-        if (INCREASE_MAX_DEPTH_AFTER != 0 && moveCounter % INCREASE_MAX_DEPTH_AFTER == 0) {
-            MAX_DEPTH++;
-        }        
-    }
-    
-    private boolean isTerminal(LocalBoard board) {
-        int currentPlayer = board.getLocalPlayer();
-        MoveActionFactory factory = new MoveActionFactory(board.getState(), currentPlayer);
-        return factory.getActions().isEmpty();
+        // Search on the search thread and send the move from the game loop once it is done,
+        // unless the search was cancelled or the position changed in the meantime.
+        int moveChoices = MonteCarloSearch.moveChoicesFor(moveCounter);
+        int maxDepth = MonteCarloSearch.maxDepthFor(moveCounter);
+        MonteCarloSearch search = (FIXED_ITERATIONS > 0)
+                ? new MonteCarloSearch(moveChoices, maxDepth, SEARCH_SEED + moveCounter)
+                : new MonteCarloSearch(moveChoices, maxDepth);
+        long positionHash = rootBoard.hash();
+        pendingSearch = search;
+        CompletableFuture.supplyAsync(() -> runSearch(search, rootBoard, moveChoices, maxDepth), searchThread)
+                .whenCompleteAsync((rootNode, error) -> completeMove(search, positionHash, rootNode, error), gameLoop);
     }
-    
-    private TreeNode bestUCTChild(TreeNode node) {
-        TreeNode bestChild = null;
-        double bestUCT = Double.NEGATIVE_INFINITY;
-        double C = 1;
-        boolean isOurPlayerTurn = (node.board.getLocalPlayer() == localBoard.getLocalPlayer());
-        for (TreeNode child : node.children) {
-            double exploitation = (child.visits > 0) ? (double) child.wins / child.visits : 0;
-            if (!isOurPlayerTurn) {
-                exploitation = 1 - exploitation;
-            }
-            double exploration = C * Math.sqrt(Math.log(node.visits) / (child.visits + 1e-10));
-            double uctValue = exploitation + exploration;
-            if (uctValue > bestUCT) {
-                bestUCT = uctValue;
-                bestChild = child;
+
+    // Runs on the search thread
+    private TreeNode runSearch(MonteCarloSearch search, LocalBoard rootBoard, int moveChoices, int maxDepth) {
+        int workers = 0;
+        if (distributedSearch != null && FIXED_ITERATIONS == 0) {
+            workers = distributedSearch.start(rootBoard, moveChoices, maxDepth, System.currentTimeMillis() + MAX_TIME);
+            if (search.isCancelled()) {
+                distributedSearch.cancel();
             }
         }
-        if (bestChild == null && !node.children.isEmpty()) {
-            bestChild = node.children.get(0);
-        }
-        return bestChild;
+        TreeNode warmStart = loadSnapshot(rootBoard);
+        TreeNode searchRoot = (warmStart != null) ? warmStart : new TreeNode(rootBoard, null, null);
+        TreeNode rootNode;
+        if (FIXED_ITERATIONS > 0) {
+            System.out.println("Starting MCTS with " + FIXED_ITERATIONS + " iterations on one thread (seeded).");
+            rootNode = search.searchIterations(searchRoot, FIXED_ITERATIONS);
+        } else if (scheduler != null) {
+            System.out.println("Starting MCTS with " + MAX_TIME/1000 + " seconds on the shared pool ("
+                    + scheduler.activeSearches() + " other searches running).");
+            rootNode = search.search(searchRoot, MAX_TIME, scheduler);
+        } else {
+            System.out.println("Starting MCTS with " + MAX_TIME/1000 + " seconds and " + NUM_THREADS + " threads.");
+            rootNode = search.search(searchRoot, MAX_TIME, NUM_THREADS);
+        }
+        long workerIterations = (workers > 0) ? distributedSearch.merge(rootNode) : 0;
+        if (search.isCancelled()) {
+            return rootNode;
+        }
+        saveSnapshot(rootNode);
+    
+        System.out.println("MCTS iterations: " + search.getIterations());
+        if (workers > 0) {
+            System.out.println("Worker iterations: " + workerIterations + " from " + workers + " of "
+                    + distributedSearch.getWorkerCount() + " workers");
+        }
+        search.printBestMoves(rootNode);
+        System.out.println("Move number: " + moveCounter);
+        return rootNode;
     }
-    
-    private TreeNode treePolicy(TreeNode node) {
-        int startingDepth = getNodeDepth(node);
-        int currentDepth = 0;
-        
-        while (!isTerminal(node.board) && currentDepth < MAX_DEPTH) {
-            if (!node.untriedMoves.isEmpty()) {
-                return expand(node);
-            } else if (!node.children.isEmpty()) {
-                node = bestUCTChild(node);
-                currentDepth = getNodeDepth(node) - startingDepth;
-            } else {
-                break;
+
+    // Runs on the game loop when a search finishes
+    private void completeMove(MonteCarloSearch search, long positionHash, TreeNode rootNode, Throwable error) {
+        if (error != null) {
+            System.err.println("Search failed: " + error);
+            if (pendingSearch == search) {
+                pendingSearch = null;
             }
+            return;
         }
-        return node;
-    }
-    
-    private int getNodeDepth(TreeNode node) {
-        int depth = 0;
-        TreeNode current = node;
-        while (current.parent != null) {
-            depth++;
-            current = current.parent;
+        if (search != pendingSearch || search.isCancelled() || localBoard.hash() != positionHash) {
+            System.out.println("Discarding search result for a position that is no longer current.");
+            return;
         }
-        return depth;
-    }
+        pendingSearch = null;
     
-    private TreeNode expand(TreeNode node) {
-        if (node.untriedMoves.isEmpty()) {
-            return node;
-        }
-        
-        PriorityQueue<Map<String, Object>> topMoves = new PriorityQueue<>(
-            Comparator.comparingDouble(move -> calculateCombinedHeuristic(move, node.board))
-        );
-        
-        for (Map<String, Object> move : node.untriedMoves) {
-            double score = calculateCombinedHeuristic(move, node.board);
-            
-            if (topMoves.size() < MOVE_CHOICES) {
-                topMoves.add(move);
-            } else if (score > calculateCombinedHeuristic(topMoves.peek(), node.board)) {
-                topMoves.poll();
-                topMoves.add(move);
-            }
-        }
-        
-        List<Map<String, Object>> bestMoves = new ArrayList<>(topMoves);
-        
-        Map<String, Object> moveMap = bestMoves.get(bestMoves.size() - 1);
-        node.untriedMoves = bestMoves;
-        node.untriedMoves.remove(moveMap);
-        
-        List<Integer> queenCurrent = (List<Integer>) moveMap.get(AmazonsGameMessage.QUEEN_POS_CURR);
-        List<Integer> queenTarget = (List<Integer>) moveMap.get(AmazonsGameMessage.QUEEN_POS_NEXT);
-        List<Integer> arrowTarget = (List<Integer>) moveMap.get(AmazonsGameMessage.ARROW_POS);
-        MoveAction moveAction = new MoveAction(queenCurrent, queenTarget, arrowTarget);
-        
-        LocalBoard newBoard = node.board.copy();
-        newBoard.updateState(moveAction);
-        
-        TreeNode childNode = new TreeNode(newBoard, node, moveAction);
-        node.children.add(childNode);
-        return childNode;
-    }
+        TreeNode bestChild = MonteCarloSearch.bestChild(rootNode);
     
-    /**
-     * Queen mobility heuristic.
-     * Evaluates how many moves the queen will have after moving to the target.
-     */
-    private double queenMobilityHeuristic(Map<String, Object> moveMap, LocalBoard board) {
-        List<Integer> queenTarget = (List<Integer>) moveMap.get(AmazonsGameMessage.QUEEN_POS_NEXT);
-        if (queenTarget == null || queenTarget.size() < 2) {
-            return 0;
+        if (bestChild == null || bestChild.action == null) {
+            System.out.println("No valid move selected by MCTS!");
+            return;
         }
-        int x = queenTarget.get(0);
-        int y = queenTarget.get(1);
-        int currentPlayer = board.getLocalPlayer();
-        MoveActionFactory factory = new MoveActionFactory(board.getState(), currentPlayer);
-        List<List<Integer>> validMoves = factory.getValidMoves(x, y);
-        double score = validMoves.size() * 3;
-        return score;
-    }
-    
-    /**
-     * Opponent blocking heuristic.
-     * Compares the opponent's mobility before and after the move.
-     */
-    private double opponentBlockingHeuristic(Map<String, Object> moveMap, LocalBoard board) {
-        int opponentPlayer = board.getOpponent();
-        MoveActionFactory factory = new MoveActionFactory(board.getState(), opponentPlayer);
-        List<List<Integer>> opponentQueens = factory.getAllQueenCurrents();
-        int mobilityBefore = 0;
-        for (List<Integer> queen : opponentQueens) {
-            int x = queen.get(0);
-            int y = queen.get(1);
-            List<List<Integer>> validMoves = factory.getValidMoves(x, y);
-            mobilityBefore += validMoves.size();
+        if (gameLog != null) {
+            gameLog.move(localBoard.getLocalPlayer(), bestChild.action, search.getIterations(), bestChild.visits,
+                    (bestChild.visits > 0) ? (double) bestChild.wins / bestChild.visits : 0, rootNode.children.size());
         }
-    
-        List<Integer> queenCurrent = (List<Integer>) moveMap.get(AmazonsGameMessage.QUEEN_POS_CURR);
-        List<Integer> queenTarget = (List<Integer>) moveMap.get(AmazonsGameMessage.QUEEN_POS_NEXT);
-        List<Integer> arrowTarget = (List<Integer>) moveMap.get(AmazonsGameMessage.ARROW_POS);
-    
-        LocalBoard simulationBoard = board.copy();
-        MoveAction moveAction = new MoveAction(queenCurrent, queenTarget, arrowTarget);
-        simulationBoard.updateState(moveAction);
-    
-        factory = new MoveActionFactory(simulationBoard.getState(), opponentPlayer);
-        int mobilityAfter = 0;
-        int completelyBlockedQueens = 0;
-        for (List<Integer> queen : opponentQueens) {
-            int x = queen.get(0);
-            int y = queen.get(1);
-            List<List<Integer>> validMoves = factory.getValidMoves(x, y);
-            mobilityAfter += validMoves.size();
-            if (validMoves.isEmpty()) {
-                completelyBlockedQueens++;
+        sendMove(bestChild.action);
+    }
+
+    @Override
+    public void cancelPendingMove() {
+        MonteCarloSearch search = pendingSearch;
+        if (search != null) {
+            System.out.println("Cancelling search in progress.");
+            search.cancel();
+            if (distributedSearch != null) {
+                distributedSearch.cancel();
             }
+            pendingSearch = null;
         }
-        int blockingEffect = mobilityBefore - mobilityAfter;
-        return (blockingEffect * 2) + (completelyBlockedQueens * 15);
     }
-    
-    /**
-     * Combined heuristic: sums up mobility, opponent blocking.
-     */
-    private double calculateCombinedHeuristic(Map<String, Object> moveMap, LocalBoard board) {
-        double mobilityScore = queenMobilityHeuristic(moveMap, board);
-        double blockingScore = opponentBlockingHeuristic(moveMap, board);
-        return (blockingScore * BLOCKING_WEIGHT) +
-               (mobilityScore * MOBILITY_WEIGHT);
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        searchThread.shutdown();
     }
-    
-    private boolean simulatePlayout(LocalBoard board, int ourPlayer) {
-        LocalBoard simulationBoard = board.copy();
-        int currentPlayer = simulationBoard.getLocalPlayer();
-        
-        for (int depth = 0; depth < SIMULATION_DEPTH; depth++) {
-            MoveActionFactory factory = new MoveActionFactory(simulationBoard.getState(), currentPlayer);
-            List<Map<String, Object>> moves = factory.getActions();
-            
-            if (moves.isEmpty()) {
-                int winner = (currentPlayer == 1) ? 2 : 1;
-                return winner == ourPlayer;
-            }
-            
-            Map<String, Object> moveMap = moves.get(random.nextInt(moves.size()));
-            List<Integer> queenCurrent = (List<Integer>) moveMap.get(AmazonsGameMessage.QUEEN_POS_CURR);
-            List<Integer> queenTarget = (List<Integer>) moveMap.get(AmazonsGameMessage.QUEEN_POS_NEXT);
-            List<Integer> arrowTarget = (List<Integer>) moveMap.get(AmazonsGameMessage.ARROW_POS);
-            MoveAction moveAction = new MoveAction(queenCurrent, queenTarget, arrowTarget);
-            simulationBoard.updateState(moveAction);
-            currentPlayer = (currentPlayer == 1) ? 2 : 1;
-            simulationBoard.setLocalPlayer(currentPlayer);
-        }
 
-        int ourMobility = 0;
-        int opponentMobility = 0;
-        
-        // Calculate our mobility
-        int ourPlayerID = ourPlayer;
-        MoveActionFactory factory = new MoveActionFactory(simulationBoard.getState(), ourPlayerID);
-        List<List<Integer>> ourQueens = factory.getAllQueenCurrents();
-        for (List<Integer> queen : ourQueens) {
-            ourMobility += factory.getValidMoves(queen.get(0), queen.get(1)).size();
-        }
-        
-        // Calculate opponent mobility
-        int opponentID = (ourPlayerID == 1) ? 2 : 1;
-        factory = new MoveActionFactory(simulationBoard.getState(), opponentID);
-        List<List<Integer>> opponentQueens = factory.getAllQueenCurrents();
-        for (List<Integer> queen : opponentQueens) {
-            opponentMobility += factory.getValidMoves(queen.get(0), queen.get(1)).size();
-        }
-        
-        return ourMobility > opponentMobility;
+    private Path snapshotPath(LocalBoard board) {
+        return Paths.get(SNAPSHOT_DIR, String.format("%016x.tree", board.hash()));
     }
-    
-    private void backpropagate(TreeNode node, int result) {
-        TreeNode current = node;
-        int ourPlayer = localBoard.getLocalPlayer();
-        while (current != null) {
-            current.visits++;
-            boolean isOurTurn = (current.board.getLocalPlayer() == ourPlayer);
-            if (isOurTurn) {
-                current.wins += result;
-            } else {
-                current.wins += (1 - result);
+
+    private TreeNode loadSnapshot(LocalBoard rootBoard) {
+        if (SNAPSHOT_DIR == null || !Files.isRegularFile(snapshotPath(rootBoard))) {
+            return null;
+        }
+        try {
+            TreeNode rootNode = TreeSnapshot.read(snapshotPath(rootBoard)).toTree(rootBoard);
+            if (rootNode != null) {
+                System.out.println("Warm start from snapshot with " + rootNode.visits + " visits.");
             }
-            current = current.parent;
+            return rootNode;
+        } catch (IOException e) {
+            System.err.println("Could not load tree snapshot: " + e.getMessage());
+            return null;
         }
     }
-    
-    private void printBestMoves(TreeNode rootNode) {
-        if (!rootNode.children.isEmpty()) {
-            System.out.println("\nBOT TOP MOVES:");
-            rootNode.children.sort((a, b) -> Integer.compare(b.visits, a.visits));
-            int showTopN = Math.min(5, rootNode.children.size());
-            for (int i = 0; i < showTopN; i++) {
-                TreeNode child = rootNode.children.get(i);
-                MoveAction move = child.action;
-                int queenXCurrent = move.getQueenCurrent().get(0);
-                int queenYCurrent = move.getQueenCurrent().get(1);
-                int queenXTarget = move.getQueenTarget().get(0);
-                int queenYTarget = move.getQueenTarget().get(1);
-                int arrowXTarget = move.getArrowTarget().get(0);
-                int arrowYTarget = move.getArrowTarget().get(1);
-                double winRate = (child.visits > 0) ? 100.0 * child.wins / child.visits : 0.0;
-                String formattedWinRate = String.format("%.2f%%", winRate);
-                Map<String, Object> moveMap = new HashMap<>();
-                moveMap.put(AmazonsGameMessage.QUEEN_POS_CURR, move.getQueenCurrent());
-                moveMap.put(AmazonsGameMessage.QUEEN_POS_NEXT, move.getQueenTarget());
-                moveMap.put(AmazonsGameMessage.ARROW_POS, move.getArrowTarget());
-                double mobilityHeuristicValue = Math.round(queenMobilityHeuristic(moveMap, child.board) * MOBILITY_WEIGHT * 100.0) / 100.0;
-                double blockingHeuristicValue = -Math.round(opponentBlockingHeuristic(moveMap, child.board) * BLOCKING_WEIGHT * 100.0) / 100.0;
-                double totalHeuristicValue = mobilityHeuristicValue + blockingHeuristicValue;
-    
-                System.out.print((i + 1) + ". Move:");
-                System.out.print("  Q:(" + queenXCurrent + "," + queenYCurrent + ")");
-                System.out.print("  to (" + queenXTarget + "," + queenYTarget + ")");
-                System.out.print("  A:(" + arrowXTarget + "," + arrowYTarget + ")");
-                System.out.print("  Visits: " + child.visits);
-                System.out.print("  Win rate: " + formattedWinRate);
-                System.out.print("  M: " + mobilityHeuristicValue);
-                System.out.print("  B: " + blockingHeuristicValue);
-                System.out.print("  Total Heuristic: " + totalHeuristicValue);
-                System.out.println();
-            }
-            System.out.println("Total Moves Considered: " + rootNode.children.size());
-            System.out.println("Move number: " + moveCounter);
-            System.out.println("Max Depth: " + MAX_DEPTH);
-        }    
+
+    private void saveSnapshot(TreeNode rootNode) {
+        if (SNAPSHOT_DIR == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(Paths.get(SNAPSHOT_DIR));
+            TreeSnapshot.write(rootNode, snapshotPath(rootNode.board), SNAPSHOT_MAX_DEPTH, SNAPSHOT_MIN_VISITS);
+        } catch (IOException e) {
+            System.err.println("Could not save tree snapshot: " + e.getMessage());
+        }
     }
+
+    private void sendMove(MoveAction moveAction) {
+        localBoard.updateState(moveAction);
     
-    private class TreeNode {
-        LocalBoard board;
-        TreeNode parent;
-        List<TreeNode> children = new ArrayList<>();
-        MoveAction action;
-        int wins = 0;
-        int visits = 0;
-        List<Map<String, Object>> untriedMoves;
+        Map<String, Object> moveMsg = new HashMap<>();
+        moveMsg.put(AmazonsGameMessage.QUEEN_POS_CURR, new ArrayList<>(moveAction.getQueenCurrent()));
+        moveMsg.put(AmazonsGameMessage.QUEEN_POS_NEXT, new ArrayList<>(moveAction.getQueenTarget()));
+        moveMsg.put(AmazonsGameMessage.ARROW_POS, new ArrayList<>(moveAction.getArrowTarget()));
     
-        public TreeNode(LocalBoard board, TreeNode parent, MoveAction action) {
-            this.board = board.copy();
-            this.parent = parent;
-            this.action = action;
-            MoveActionFactory factory = new MoveActionFactory(board.getState(), board.getLocalPlayer());
-            this.untriedMoves = factory.getActions();
-        }
+        sendMoveMessage(moveMsg);
+        recordGameEndIfOver(localBoard.getOpponent());
     }
 }
@@ -0,0 +1,702 @@
+package ubc.cosc322;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import ygraph.ai.smartfox.games.amazons.AmazonsGameMessage;
+
+/**
+ * MonteCarloSearch.java
+ *
+ * The Monte Carlo Tree Search (MCTS) engine behind MonteCarloPlayer. It has no dependency on the game
+ * client, so offline tools (e.g. OpeningBookBuilder) can run the same search the player does.
+ * The search uses a combination of heuristics to pick which moves to expand:
+ * - Queen mobility: favoring moves that leave the queen with many options.
+ * - Opponent blocking: preferring moves that reduce opponent mobility.
+ *
+ * Only the best MOVE_CHOICES moves of a node (by heuristic) are expanded, and the tree is grown to at
+ * most maxDepth plies below the root.
+ */
+public class MonteCarloSearch {
+
+    // MCTS parameters.
+    private static final int SIMULATION_DEPTH = 25;
+
+    // Search schedule of a game, shared by MonteCarloPlayer and the offline tools. Searches start wide
+    // and shallow, and get wider and deeper as the game goes on and the branching factor drops.
+    public static final int MOVE_CHOICES = 15;
+    public static final int INCREASE_MOVE_CHOICES = 5;
+    public static final int MAX_DEPTH = 1;
+    public static final int INCREASE_MAX_DEPTH_AFTER = 10;
+
+    // Heuristic weights, loaded from heuristics.properties if present (see HeuristicWeights).
+    private static final HeuristicWeights WEIGHTS = HeuristicWeights.load();
+
+    // Move choice in playouts, uniform unless set with -Damazons.playout (see PlayoutPolicy).
+    private static final PlayoutPolicy PLAYOUT_POLICY = PlayoutPolicy.load();
+
+    // RAVE parameters. The number of real visits at which a child's own win rate
+    // and its All-Moves-As-First estimate carry equal weight.
+    private static final double RAVE_EQUIVALENCE = 1000;
+
+    // Playout leaves are scored in batches of this size (-Damazons.leafBatch). 1 scores each leaf on its
+    // own thread. Single-threaded searches never batch, so every playout is scored before the next selection.
+    private static final int LEAF_BATCH_SIZE = Math.max(1, Integer.getInteger("amazons.leafBatch", 64));
+
+    // How often (ms) a search checks whether it has been granted more threads, and how long (ms) a worker
+    // on a shared SearchScheduler pool runs before giving its thread to the next search in line.
+    private static final long REBALANCE_INTERVAL = 20;
+    private static final long TIME_SLICE = 50;
+
+    private final int moveChoices;
+    private final int maxDepth;
+    private int ourPlayer;
+
+    private final Random random;
+    private final AtomicLong iterationCount = new AtomicLong(0);
+    private volatile boolean cancelled = false;
+
+    public MonteCarloSearch(int moveChoices, int maxDepth) {
+        this(moveChoices, maxDepth, new Random());
+    }
+
+    // Seeded playouts. Together with searchIterations the same seed always builds the same tree.
+    public MonteCarloSearch(int moveChoices, int maxDepth, long seed) {
+        this(moveChoices, maxDepth, new Random(seed));
+    }
+
+    private MonteCarloSearch(int moveChoices, int maxDepth, Random random) {
+        this.moveChoices = moveChoices;
+        this.maxDepth = maxDepth;
+        this.random = random;
+    }
+
+    // Move choices for a player's n-th move of the game (1 for its first move)
+    public static int moveChoicesFor(int move) {
+        return MOVE_CHOICES + (move - 1) * INCREASE_MOVE_CHOICES;
+    }
+
+    // Maximum tree depth for a player's n-th move of the game
+    public static int maxDepthFor(int move) {
+        return (INCREASE_MAX_DEPTH_AFTER != 0) ? MAX_DEPTH + (move - 1) / INCREASE_MAX_DEPTH_AFTER : MAX_DEPTH;
+    }
+
+    /**
+     * Searches from the given position for timeMillis using numThreads threads.
+     * The player to move is rootBoard's local player. Returns the root of the search tree.
+     */
+    public TreeNode search(LocalBoard rootBoard, long timeMillis, int numThreads) {
+        return search(new TreeNode(rootBoard, null, null), timeMillis, numThreads);
+    }
+
+    /**
+     * Continues searching an existing tree, e.g. one loaded from a TreeSnapshot.
+     * Returns the same root node.
+     */
+    public TreeNode search(TreeNode rootNode, long timeMillis, int numThreads) {
+        // Create thread pool. This allows multiple threads to run.
+        // Currently increases our iterations by around 45%
+        ExecutorService executor = Executors.newWorkStealingPool(numThreads);
+        try {
+            return run(rootNode, timeMillis, executor, numThreads, () -> numThreads, Long.MAX_VALUE);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Searches on the scheduler's shared pool, with as many threads as the scheduler grants this search.
+     * Workers give their thread back to the pool every TIME_SLICE ms, so searches of other games get a
+     * turn and a change in the grant takes effect quickly.
+     */
+    public TreeNode search(TreeNode rootNode, long timeMillis, SearchScheduler scheduler) {
+        scheduler.register(this, timeMillis);
+        try {
+            return run(rootNode, timeMillis, scheduler.getPool(), scheduler.getTotalThreads(),
+                    () -> scheduler.threadsFor(this), TIME_SLICE);
+        } finally {
+            scheduler.unregister(this);
+        }
+    }
+
+    /**
+     * Runs exactly the given number of iterations on the calling thread, with no time limit. With a seeded
+     * search this is deterministic: the same tree, settings and seed always give the same result.
+     */
+    public TreeNode searchIterations(TreeNode rootNode, long iterations) {
+        ourPlayer = rootNode.board.getLocalPlayer();
+        iterationCount.set(0);
+
+        for (long i = 0; i < iterations && !cancelled; i++) {
+            runIteration(rootNode, null);
+        }
+        return rootNode;
+    }
+
+    private TreeNode run(TreeNode rootNode, long timeMillis, ExecutorService executor, int maxThreads,
+            IntSupplier allowedThreads, long timeSlice) {
+        ourPlayer = rootNode.board.getLocalPlayer();
+        long endTime = System.currentTimeMillis() + timeMillis;
+        iterationCount.set(0);
+
+        BatchLeafEvaluator<PendingLeaf> leafEvaluator = (maxThreads > 1) ? newLeafEvaluator() : null;
+
+        // One worker per granted thread slot. This loop starts workers for newly granted slots;
+        // a worker frees its slot when it stops.
+        AtomicIntegerArray runningSlots = new AtomicIntegerArray(maxThreads);
+        while (System.currentTimeMillis() < endTime && !cancelled) {
+            int allowed = Math.min(maxThreads, allowedThreads.getAsInt());
+            for (int slot = 0; slot < allowed; slot++) {
+                if (runningSlots.compareAndSet(slot, 0, 1)) {
+                    executor.execute(new Worker(rootNode, leafEvaluator, executor, runningSlots, slot,
+                            allowedThreads, endTime, timeSlice));
+                }
+            }
+            try {
+                Thread.sleep(Math.max(1, Math.min(REBALANCE_INTERVAL, endTime - System.currentTimeMillis())));
+            } catch (InterruptedException e) {
+                System.err.println("Thread execution interrupted: " + e.getMessage());
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        // Let the workers finish their last iteration. Each one wakes us when it frees its slot.
+        boolean interrupted = false;
+        synchronized (runningSlots) {
+            for (int slot = 0; slot < maxThreads; slot++) {
+                while (runningSlots.get(slot) != 0) {
+                    try {
+                        runningSlots.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (leafEvaluator != null) {
+            leafEvaluator.flush();
+        }
+        // A busy shared pool may not have run a single iteration in a short search. Expand one root move
+        // here, so the caller always has a move to play.
+        if (rootNode.children.isEmpty() && !rootNode.untriedMoves.isEmpty() && !cancelled) {
+            runIteration(rootNode, null);
+        }
+        return rootNode;
+    }
+
+    // The batch evaluator for a multi-threaded search, or null to score every leaf right away
+    private BatchLeafEvaluator<PendingLeaf> newLeafEvaluator() {
+        if (LEAF_BATCH_SIZE <= 1) {
+            return null;
+        }
+        return new BatchLeafEvaluator<>(LEAF_BATCH_SIZE, ourPlayer,
+                (leaf, win) -> backpropagate(leaf.node, win ? 1 : 0, leaf.amafRecord));
+    }
+
+    private class Worker implements Runnable {
+        private final TreeNode rootNode;
+        private final BatchLeafEvaluator<PendingLeaf> leafEvaluator;
+        private final ExecutorService executor;
+        private final AtomicIntegerArray runningSlots;
+        private final int slot;
+        private final IntSupplier allowedThreads;
+        private final long endTime;
+        private final long timeSlice;
+
+        Worker(TreeNode rootNode, BatchLeafEvaluator<PendingLeaf> leafEvaluator, ExecutorService executor,
+                AtomicIntegerArray runningSlots, int slot, IntSupplier allowedThreads, long endTime, long timeSlice) {
+            this.rootNode = rootNode;
+            this.leafEvaluator = leafEvaluator;
+            this.executor = executor;
+            this.runningSlots = runningSlots;
+            this.slot = slot;
+            this.allowedThreads = allowedThreads;
+            this.endTime = endTime;
+            this.timeSlice = timeSlice;
+        }
+
+        @Override
+        public void run() {
+            long now = System.currentTimeMillis();
+            long sliceEnd = (endTime - now > timeSlice) ? now + timeSlice : endTime;
+            boolean requeued = false;
+            try {
+                while (System.currentTimeMillis() < sliceEnd && slot < allowedThreads.getAsInt() && !cancelled) {
+                    runIteration(rootNode, leafEvaluator);
+                }
+                // Slice over: queue up behind the other searches' workers
+                if (System.currentTimeMillis() < endTime && slot < allowedThreads.getAsInt() && !cancelled) {
+                    executor.execute(this);
+                    requeued = true;
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Search thread failed: " + e);
+            } finally {
+                // Freed however the worker stops, even on an Error, so run never waits on a dead slot
+                if (!requeued) {
+                    synchronized (runningSlots) {
+                        runningSlots.set(slot, 0);
+                        runningSlots.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    private void runIteration(TreeNode rootNode, BatchLeafEvaluator<PendingLeaf> leafEvaluator) {
+        // Step 1: Selection
+        // Mark the path as pending until its playout is scored (see bestUCTChild)
+        TreeNode selectedNode;
+        synchronized (rootNode) {
+            selectedNode = treePolicy(rootNode);
+            for (TreeNode node = selectedNode; node != null; node = node.parent) {
+                node.pendingVisits++;
+            }
+        }
+        
+        // Scoring the leaf takes the pending visits back off the path. If the playout fails before it
+        // is scored, take them back here, or the path would look lost for the rest of the search.
+        boolean scored = false;
+        try {
+            // Step 2: Simulation
+            LocalBoard simulationBoard = selectedNode.board.copy();
+            AmafRecord amafRecord = new AmafRecord();
+            int winner = simulatePlayout(simulationBoard, amafRecord);
+
+            // Step 3: Backpropagation. Playouts that hit the depth limit are scored by
+            // mobility, either in a batch with other threads' leaves or right here.
+            if (winner != 0) {
+                scored = true;
+                backpropagate(selectedNode, winner == ourPlayer ? 1 : 0, amafRecord);
+            } else if (leafEvaluator != null) {
+                scored = true;
+                leafEvaluator.submit(simulationBoard, new PendingLeaf(selectedNode, amafRecord));
+            } else {
+                int result = hasMoreMobility(simulationBoard, ourPlayer) ? 1 : 0;
+                scored = true;
+                backpropagate(selectedNode, result, amafRecord);
+            }
+        } finally {
+            if (!scored) {
+                synchronized (rootNode) {
+                    for (TreeNode node = selectedNode; node != null; node = node.parent) {
+                        node.pendingVisits--;
+                    }
+                }
+            }
+        }
+        iterationCount.incrementAndGet();
+    }
+
+    // The root child with the best win ratio, or null if the root has no children
+    public static TreeNode bestChild(TreeNode rootNode) {
+        TreeNode bestChild = null;
+        double bestScore = -1;
+        for (TreeNode child : rootNode.children) {
+            double winRatio = (child.visits > 0) ? ((double) child.wins / (double) child.visits) : 0.5;
+            if (winRatio > bestScore) {
+                bestScore = winRatio;
+                bestChild = child;
+            }
+        }
+        return bestChild;
+    }
+
+    public long getIterations() {
+        return iterationCount.get();
+    }
+
+    // Stops a running search early. search() then returns the tree built so far.
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private boolean isTerminal(LocalBoard board) {
+        int currentPlayer = board.getLocalPlayer();
+        MoveActionFactory factory = new MoveActionFactory(board.getState(), currentPlayer);
+        return factory.getActions().isEmpty();
+    }
+    
+    private TreeNode bestUCTChild(TreeNode node) {
+        TreeNode bestChild = null;
+        double bestUCT = Double.NEGATIVE_INFINITY;
+        double C = 1;
+        boolean isOurPlayerTurn = (node.board.getLocalPlayer() == ourPlayer);
+        int nodeVisits = node.visits + node.pendingVisits;
+        for (TreeNode child : node.children) {
+            // Playouts not scored yet (other threads, or leaves waiting in a batch) count as losses for
+            // the player choosing here (virtual loss), so they spread over the children instead of all
+            // following the same path.
+            int visits = child.visits + child.pendingVisits;
+            int chooserWins = isOurPlayerTurn ? child.wins : child.visits - child.wins;
+            double exploitation = (visits > 0) ? (double) chooserWins / visits : 0;
+            int amafVisits = node.amafVisits[child.queenTargetSquare]
+                    + node.amafVisits[LocalBoard.SQUARES + child.arrowTargetSquare];
+            if (amafVisits > 0) {
+                // Blend in the AMAF estimate, trusting it less as the child gathers real visits.
+                double amafValue = (double) (node.amafWins[child.queenTargetSquare]
+                        + node.amafWins[LocalBoard.SQUARES + child.arrowTargetSquare]) / amafVisits;
+                if (!isOurPlayerTurn) {
+                    amafValue = 1 - amafValue;
+                }
+                double beta = Math.sqrt(RAVE_EQUIVALENCE / (3 * visits + RAVE_EQUIVALENCE));
+                exploitation = (1 - beta) * exploitation + beta * amafValue;
+            }
+            double exploration = C * Math.sqrt(Math.log(nodeVisits) / (visits + 1e-10));
+            double uctValue = exploitation + exploration;
+            if (uctValue > bestUCT) {
+                bestUCT = uctValue;
+                bestChild = child;
+            }
+        }
+        if (bestChild == null && !node.children.isEmpty()) {
+            bestChild = node.children.get(0);
+        }
+        return bestChild;
+    }
+    
+    private TreeNode treePolicy(TreeNode node) {
+        int startingDepth = getNodeDepth(node);
+        int currentDepth = 0;
+        
+        while (!isTerminal(node.board) && currentDepth < maxDepth) {
+            if (!node.untriedMoves.isEmpty()) {
+                return expand(node);
+            } else if (!node.children.isEmpty()) {
+                node = bestUCTChild(node);
+                currentDepth = getNodeDepth(node) - startingDepth;
+            } else {
+                break;
+            }
+        }
+        return node;
+    }
+    
+    private int getNodeDepth(TreeNode node) {
+        int depth = 0;
+        TreeNode current = node;
+        while (current.parent != null) {
+            depth++;
+            current = current.parent;
+        }
+        return depth;
+    }
+    
+    private TreeNode expand(TreeNode node) {
+        if (node.untriedMoves.isEmpty()) {
+            return node;
+        }
+        
+        PriorityQueue<Map<String, Object>> topMoves = new PriorityQueue<>(
+            Comparator.comparingDouble(move -> calculateCombinedHeuristic(move, node.board))
+        );
+        
+        for (Map<String, Object> move : node.untriedMoves) {
+            double score = calculateCombinedHeuristic(move, node.board);
+            
+            if (topMoves.size() < moveChoices) {
+                topMoves.add(move);
+            } else if (score > calculateCombinedHeuristic(topMoves.peek(), node.board)) {
+                topMoves.poll();
+                topMoves.add(move);
+            }
+        }
+        
+        List<Map<String, Object>> bestMoves = new ArrayList<>(topMoves);
+        
+        Map<String, Object> moveMap = bestMoves.get(bestMoves.size() - 1);
+        node.untriedMoves = bestMoves;
+        node.untriedMoves.remove(moveMap);
+        
+        List<Integer> queenCurrent = (List<Integer>) moveMap.get(AmazonsGameMessage.QUEEN_POS_CURR);
+        List<Integer> queenTarget = (List<Integer>) moveMap.get(AmazonsGameMessage.QUEEN_POS_NEXT);
+        List<Integer> arrowTarget = (List<Integer>) moveMap.get(AmazonsGameMessage.ARROW_POS);
+        MoveAction moveAction = new MoveAction(queenCurrent, queenTarget, arrowTarget);
+        return node.addChild(moveAction);
+    }
+    
+    /**
+     * Queen mobility heuristic.
+     * Evaluates how many moves the queen will have after moving to the target.
+     */
+    private double queenMobilityHeuristic(Map<String, Object> moveMap, LocalBoard board) {
+        List<Integer> queenTarget = (List<Integer>) moveMap.get(AmazonsGameMessage.QUEEN_POS_NEXT);
+        if (queenTarget == null || queenTarget.size() < 2) {
+            return 0;
+        }
+        double score = queenMobility(board, queenTarget) * 3;
+        return score;
+    }
+
+    // Number of squares a queen could move to from the target square
+    static int queenMobility(LocalBoard board, List<Integer> queenTarget) {
+        MoveActionFactory factory = new MoveActionFactory(board.getState(), board.getLocalPlayer());
+        return factory.getValidMoves(queenTarget.get(0), queenTarget.get(1)).size();
+    }
+    
+    /**
+     * Opponent blocking heuristic.
+     * Compares the opponent's mobility before and after the move.
+     */
+    private double opponentBlockingHeuristic(Map<String, Object> moveMap, LocalBoard board) {
+        List<Integer> queenCurrent = (List<Integer>) moveMap.get(AmazonsGameMessage.QUEEN_POS_CURR);
+        List<Integer> queenTarget = (List<Integer>) moveMap.get(AmazonsGameMessage.QUEEN_POS_NEXT);
+        List<Integer> arrowTarget = (List<Integer>) moveMap.get(AmazonsGameMessage.ARROW_POS);
+        int[] terms = blockingTerms(board, new MoveAction(queenCurrent, queenTarget, arrowTarget));
+        return (terms[0] * WEIGHTS.blockingFactor) + (terms[1] * WEIGHTS.blockedQueenBonus);
+    }
+
+    /**
+     * Raw terms of the blocking heuristic: how many moves the opponent loses,
+     * and how many opponent queens are left with no moves at all.
+     */
+    static int[] blockingTerms(LocalBoard board, MoveAction moveAction) {
+        int opponentPlayer = board.getOpponent();
+        MoveActionFactory factory = new MoveActionFactory(board.getState(), opponentPlayer);
+        List<List<Integer>> opponentQueens = factory.getAllQueenCurrents();
+        int mobilityBefore = 0;
+        for (List<Integer> queen : opponentQueens) {
+            int x = queen.get(0);
+            int y = queen.get(1);
+            List<List<Integer>> validMoves = factory.getValidMoves(x, y);
+            mobilityBefore += validMoves.size();
+        }
+    
+        LocalBoard simulationBoard = board.copy();
+        simulationBoard.updateState(moveAction);
+    
+        factory = new MoveActionFactory(simulationBoard.getState(), opponentPlayer);
+        int mobilityAfter = 0;
+        int completelyBlockedQueens = 0;
+        for (List<Integer> queen : opponentQueens) {
+            int x = queen.get(0);
+            int y = queen.get(1);
+            List<List<Integer>> validMoves = factory.getValidMoves(x, y);
+            mobilityAfter += validMoves.size();
+            if (validMoves.isEmpty()) {
+                completelyBlockedQueens++;
+            }
+        }
+        int blockingEffect = mobilityBefore - mobilityAfter;
+        return new int[] { blockingEffect, completelyBlockedQueens };
+    }
+    
+    /**
+     * Combined heuristic: sums up mobility, opponent blocking.
+     */
+    private double calculateCombinedHeuristic(Map<String, Object> moveMap, LocalBoard board) {
+        double mobilityScore = queenMobilityHeuristic(moveMap, board);
+        double blockingScore = opponentBlockingHeuristic(moveMap, board);
+        return (blockingScore * WEIGHTS.blockingWeight) +
+               (mobilityScore * WEIGHTS.mobilityWeight);
+    }
+    
+    /**
+     * Plays random moves on the given board for up to SIMULATION_DEPTH plies.
+     * Returns the winning player if someone runs out of moves, or 0 if the depth limit is reached.
+     */
+    private int simulatePlayout(LocalBoard simulationBoard, AmafRecord amafRecord) {
+        if (!PLAYOUT_POLICY.isUniform()) {
+            return simulateHeavyPlayout(simulationBoard, amafRecord);
+        }
+        int currentPlayer = simulationBoard.getLocalPlayer();
+        
+        for (int depth = 0; depth < SIMULATION_DEPTH; depth++) {
+            MoveActionFactory factory = new MoveActionFactory(simulationBoard.getState(), currentPlayer);
+            List<Map<String, Object>> moves = factory.getActions();
+            
+            if (moves.isEmpty()) {
+                return (currentPlayer == 1) ? 2 : 1;
+            }
+            
+            Map<String, Object> moveMap = moves.get(random.nextInt(moves.size()));
+            List<Integer> queenCurrent = (List<Integer>) moveMap.get(AmazonsGameMessage.QUEEN_POS_CURR);
+            List<Integer> queenTarget = (List<Integer>) moveMap.get(AmazonsGameMessage.QUEEN_POS_NEXT);
+            List<Integer> arrowTarget = (List<Integer>) moveMap.get(AmazonsGameMessage.ARROW_POS);
+            MoveAction moveAction = new MoveAction(queenCurrent, queenTarget, arrowTarget);
+            simulationBoard.updateState(moveAction);
+            amafRecord.add(currentPlayer, moveAction);
+            currentPlayer = (currentPlayer == 1) ? 2 : 1;
+            simulationBoard.setLocalPlayer(currentPlayer);
+        }
+        return 0;
+    }
+
+    // Same as simulatePlayout, with moves picked by PLAYOUT_POLICY instead of from the full move list
+    private int simulateHeavyPlayout(LocalBoard simulationBoard, AmafRecord amafRecord) {
+        int currentPlayer = simulationBoard.getLocalPlayer();
+        int[][] state = simulationBoard.getState();
+
+        for (int depth = 0; depth < SIMULATION_DEPTH; depth++) {
+            int move = PLAYOUT_POLICY.playMove(state, currentPlayer, random);
+            if (move < 0) {
+                return (currentPlayer == 1) ? 2 : 1;
+            }
+            amafRecord.add(currentPlayer, (move >>> 7) & 0x7F, (move >>> 14) & 0x7F);
+            currentPlayer = (currentPlayer == 1) ? 2 : 1;
+            simulationBoard.setLocalPlayer(currentPlayer);
+        }
+        return 0;
+    }
+
+    /**
+     * Scalar leaf evaluation: true if our queens have more moves than the opponent's.
+     * BatchLeafEvaluator computes the same thing for many boards at once.
+     */
+    private boolean hasMoreMobility(LocalBoard simulationBoard, int ourPlayer) {
+        int ourMobility = 0;
+        int opponentMobility = 0;
+        
+        // Calculate our mobility
+        int ourPlayerID = ourPlayer;
+        MoveActionFactory factory = new MoveActionFactory(simulationBoard.getState(), ourPlayerID);
+        List<List<Integer>> ourQueens = factory.getAllQueenCurrents();
+        for (List<Integer> queen : ourQueens) {
+            ourMobility += factory.getValidMoves(queen.get(0), queen.get(1)).size();
+        }
+        
+        // Calculate opponent mobility
+        int opponentID = (ourPlayerID == 1) ? 2 : 1;
+        factory = new MoveActionFactory(simulationBoard.getState(), opponentID);
+        List<List<Integer>> opponentQueens = factory.getAllQueenCurrents();
+        for (List<Integer> queen : opponentQueens) {
+            opponentMobility += factory.getValidMoves(queen.get(0), queen.get(1)).size();
+        }
+        
+        return ourMobility > opponentMobility;
+    }
+    
+    // Scores a playout on the path from node to the root. Runs under the root's lock, like selection.
+    private void backpropagate(TreeNode node, int result, AmafRecord amafRecord) {
+        TreeNode root = node;
+        while (root.parent != null) {
+            root = root.parent;
+        }
+        synchronized (root) {
+            backpropagatePath(node, result, amafRecord);
+        }
+    }
+
+    private void backpropagatePath(TreeNode node, int result, AmafRecord amafRecord) {
+        TreeNode current = node;
+        while (current != null) {
+            current.visits++;
+            current.pendingVisits--;
+            boolean isOurTurn = (current.board.getLocalPlayer() == ourPlayer);
+            int nodeResult = isOurTurn ? result : (1 - result);
+            current.wins += nodeResult;
+
+            // Every move the player to move here made later in the playout (or deeper in the tree)
+            // counts as if it had been played first from this node.
+            int mover = current.board.getLocalPlayer();
+            for (int i = 0; i < amafRecord.length; i++) {
+                if (amafRecord.movers[i] == mover) {
+                    current.amafVisits[amafRecord.queenTargets[i]]++;
+                    current.amafWins[amafRecord.queenTargets[i]] += nodeResult;
+                    current.amafVisits[LocalBoard.SQUARES + amafRecord.arrowTargets[i]]++;
+                    current.amafWins[LocalBoard.SQUARES + amafRecord.arrowTargets[i]] += nodeResult;
+                }
+            }
+
+            if (current.parent != null) {
+                amafRecord.add(current.parent.board.getLocalPlayer(), current.action);
+            }
+            current = current.parent;
+        }
+    }
+    
+    public void printBestMoves(TreeNode rootNode) {
+        if (!rootNode.children.isEmpty()) {
+            System.out.println("\nBOT TOP MOVES:");
+            rootNode.children.sort((a, b) -> Integer.compare(b.visits, a.visits));
+            int showTopN = Math.min(5, rootNode.children.size());
+            for (int i = 0; i < showTopN; i++) {
+                TreeNode child = rootNode.children.get(i);
+                MoveAction move = child.action;
+                int queenXCurrent = move.getQueenCurrent().get(0);
+                int queenYCurrent = move.getQueenCurrent().get(1);
+                int queenXTarget = move.getQueenTarget().get(0);
+                int queenYTarget = move.getQueenTarget().get(1);
+                int arrowXTarget = move.getArrowTarget().get(0);
+                int arrowYTarget = move.getArrowTarget().get(1);
+                double winRate = (child.visits > 0) ? 100.0 * child.wins / child.visits : 0.0;
+                String formattedWinRate = String.format("%.2f%%", winRate);
+                Map<String, Object> moveMap = new HashMap<>();
+                moveMap.put(AmazonsGameMessage.QUEEN_POS_CURR, move.getQueenCurrent());
+                moveMap.put(AmazonsGameMessage.QUEEN_POS_NEXT, move.getQueenTarget());
+                moveMap.put(AmazonsGameMessage.ARROW_POS, move.getArrowTarget());
+                double mobilityHeuristicValue = Math.round(queenMobilityHeuristic(moveMap, child.board) * WEIGHTS.mobilityWeight * 100.0) / 100.0;
+                double blockingHeuristicValue = -Math.round(opponentBlockingHeuristic(moveMap, child.board) * WEIGHTS.blockingWeight * 100.0) / 100.0;
+                double totalHeuristicValue = mobilityHeuristicValue + blockingHeuristicValue;
+    
+                System.out.print((i + 1) + ". Move:");
+                System.out.print("  Q:(" + queenXCurrent + "," + queenYCurrent + ")");
+                System.out.print("  to (" + queenXTarget + "," + queenYTarget + ")");
+                System.out.print("  A:(" + arrowXTarget + "," + arrowYTarget + ")");
+                System.out.print("  Visits: " + child.visits);
+                System.out.print("  Win rate: " + formattedWinRate);
+                System.out.print("  M: " + mobilityHeuristicValue);
+                System.out.print("  B: " + blockingHeuristicValue);
+                System.out.print("  Total Heuristic: " + totalHeuristicValue);
+                System.out.println();
+            }
+            System.out.println("Total Moves Considered: " + rootNode.children.size());
+            System.out.println("Max Depth: " + maxDepth);
+        }    
+    }
+
+    private static class PendingLeaf {
+        final TreeNode node;
+        final AmafRecord amafRecord;
+
+        PendingLeaf(TreeNode node, AmafRecord amafRecord) {
+            this.node = node;
+            this.amafRecord = amafRecord;
+        }
+    }
+
+    /**
+     * The moves made after a node during one iteration, stored as square indices.
+     * Filled by the playout, then extended with tree moves as backpropagation climbs.
+     */
+    private static class AmafRecord {
+        int[] movers = new int[SIMULATION_DEPTH * 2];
+        int[] queenTargets = new int[SIMULATION_DEPTH * 2];
+        int[] arrowTargets = new int[SIMULATION_DEPTH * 2];
+        int length = 0;
+
+        void add(int mover, MoveAction action) {
+            add(mover, LocalBoard.toSquare(action.getQueenTarget()), LocalBoard.toSquare(action.getArrowTarget()));
+        }
+
+        void add(int mover, int queenTargetSquare, int arrowTargetSquare) {
+            if (length == movers.length) {
+                movers = Arrays.copyOf(movers, length * 2);
+                queenTargets = Arrays.copyOf(queenTargets, length * 2);
+                arrowTargets = Arrays.copyOf(arrowTargets, length * 2);
+            }
+            movers[length] = mover;
+            queenTargets[length] = queenTargetSquare;
+            arrowTargets[length] = arrowTargetSquare;
+            length++;
+        }
+    }
+}
@@ -30,6 +30,20 @@ public class MoveAction {
         return arrowTarget;
     }
 
+    // Packs the move into 21 bits: 7 bits each for the queen's square, its target square and the arrow square
+    public int encode() {
+        return LocalBoard.toSquare(queenCurrent)
+                | (LocalBoard.toSquare(queenTarget) << 7)
+                | (LocalBoard.toSquare(arrowTarget) << 14);
+    }
+
+    public static MoveAction decode(int encoded) {
+        return new MoveAction(
+                LocalBoard.toPosition(encoded & 0x7F),
+                LocalBoard.toPosition((encoded >>> 7) & 0x7F),
+                LocalBoard.toPosition((encoded >>> 14) & 0x7F));
+    }
+
     @Override
     public String toString() {
         return String.format("Move Queen from %s to %s, Shoot Arrow at %s", queenCurrent, queenTarget, arrowTarget);
@@ -48,6 +48,16 @@ public class MoveActionFactory {
         return actions;
     }
 
+    // True if the current player has at least one move
+    public boolean hasMoves() {
+        for (List<Integer> queen : getAllQueenCurrents()) {
+            if (!getValidMoves(queen.get(0), queen.get(1)).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     // Get all queen positions for the current player
     public List<List<Integer>> getAllQueenCurrents() {
         List<List<Integer>> queenPositions = new ArrayList<>();
@@ -94,6 +104,23 @@ public class MoveActionFactory {
         return moves;
     }
     
+    // Checks that a move (e.g. one read from a file) can be played by the current player on this board
+    public boolean isLegal(MoveAction action) {
+        List<Integer> queenCurrent = action.getQueenCurrent();
+        List<Integer> queenTarget = action.getQueenTarget();
+        List<Integer> arrowTarget = action.getArrowTarget();
+        if (board[queenCurrent.get(0)][queenCurrent.get(1)] != currentPlayer
+                || !getValidMoves(queenCurrent.get(0), queenCurrent.get(1)).contains(queenTarget)) {
+            return false;
+        }
+
+        // The arrow is shot from the queen's new square, and may land on the square it left
+        board[queenCurrent.get(0)][queenCurrent.get(1)] = 0;
+        boolean arrowValid = getValidMoves(queenTarget.get(0), queenTarget.get(1)).contains(arrowTarget);
+        board[queenCurrent.get(0)][queenCurrent.get(1)] = currentPlayer;
+        return arrowValid;
+    }
+
     // Checks if the move is on the board and the position is empty
     private boolean isValidMove(int row, int col) {
         return (row >= 1 && row <= 10 && col >= 1 && col <= 10 && board[row][col] == 0);
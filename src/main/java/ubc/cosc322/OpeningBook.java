@@ -0,0 +1,125 @@
+package ubc.cosc322;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/* OpeningBook.java
+ *
+ * A read-only opening book, memory-mapped from a binary file written by OpeningBookBuilder.
+ * Lookups read straight from the mapping, so the book takes no heap no matter how large it is.
+ *
+ * FILE FORMAT (big-endian):
+ * header:  int magic ('AMZB'), int version, int entry count
+ * entries: long position hash, int encoded move, int visits, float win rate   (20 bytes each)
+ *
+ * Entries are sorted by position hash, and moves for the same position by visits (most first).
+ * The position hash is LocalBoard.hash(), which includes the player to move, and the move is
+ * MoveAction.encode().
+ */
+public class OpeningBook {
+
+    public static final int MAGIC = 0x414D5A42;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 12;
+    public static final int ENTRY_BYTES = 20;
+
+    // Fewest visits a move needs to be written to the book by OpeningBookBuilder, and to be played from it
+    public static final int MIN_VISITS = 100;
+
+    private final MappedByteBuffer buffer;
+    private final int entryCount;
+
+    private OpeningBook(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an opening book file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported opening book version: " + buffer.getInt(4));
+        }
+        this.entryCount = buffer.getInt(8);
+        if (buffer.capacity() < HEADER_BYTES + (long) entryCount * ENTRY_BYTES) {
+            throw new IOException("Opening book is truncated");
+        }
+    }
+
+    // Maps the book at the given path, or returns null if it is missing or unreadable
+    public static OpeningBook load(Path path) {
+        if (!Files.isRegularFile(path)) {
+            System.out.println("No opening book found at " + path);
+            return null;
+        }
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            OpeningBook book = new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            System.out.println("Loaded opening book with " + book.size() + " entries from " + path);
+            return book;
+        } catch (IOException e) {
+            System.err.println("Could not load opening book " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * Returns the most visited book move for this position (the board's local player is to move),
+     * or null if the position is not in the book or its best move has fewer than minVisits visits.
+     */
+    public MoveAction lookup(LocalBoard board, int minVisits) {
+        int index = firstIndexOf(board.hash());
+        if (index < 0 || getVisits(index) < minVisits) {
+            return null;
+        }
+        // Guard against hash collisions
+        MoveAction move = MoveAction.decode(getMove(index));
+        MoveActionFactory factory = new MoveActionFactory(board.getState(), board.getLocalPlayer());
+        return factory.isLegal(move) ? move : null;
+    }
+
+    // Binary search for the first entry with this hash, or -1 if there is none
+    private int firstIndexOf(long hash) {
+        int low = 0;
+        int high = entryCount - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midHash = getHash(mid);
+            if (midHash < hash) {
+                low = mid + 1;
+            } else {
+                if (midHash == hash) {
+                    found = mid;
+                }
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private int offset(int index) {
+        return HEADER_BYTES + index * ENTRY_BYTES;
+    }
+
+    long getHash(int index) {
+        return buffer.getLong(offset(index));
+    }
+
+    int getMove(int index) {
+        return buffer.getInt(offset(index) + 8);
+    }
+
+    int getVisits(int index) {
+        return buffer.getInt(offset(index) + 12);
+    }
+
+    float getWinRate(int index) {
+        return buffer.getFloat(offset(index) + 16);
+    }
+}
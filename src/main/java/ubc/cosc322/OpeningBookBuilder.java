@@ -0,0 +1,103 @@
+package ubc.cosc322;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/* OpeningBookBuilder.java
+ *
+ * Builds an OpeningBook offline by running long searches on the opening positions.
+ *
+ * Starting from the initial position (black moves first on the game server), every position is searched
+ * for the given time. All root moves with at least OpeningBook.MIN_VISITS visits go into the book. The best `breadth`
+ * moves are then played and the resulting positions are searched in turn, until `plies` plies deep.
+ *
+ * USAGE:
+ * java ubc.cosc322.OpeningBookBuilder <output file> [plies] [seconds per position] [breadth]
+ */
+public class OpeningBookBuilder {
+
+    // Wider and one ply deeper than the player's first search (see MonteCarloSearch's schedule), since
+    // there is time to spare offline and a book move is played without any search of its own
+    private static final int MOVE_CHOICES = MonteCarloSearch.moveChoicesFor(1) + 5 * MonteCarloSearch.INCREASE_MOVE_CHOICES;
+    private static final int MAX_DEPTH = MonteCarloSearch.maxDepthFor(1) + 1;
+    private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private final long searchMillis;
+    private final int breadth;
+    private final List<long[]> entries = new ArrayList<>();
+    private final Set<Long> searched = new HashSet<>();
+
+    public OpeningBookBuilder(long searchMillis, int breadth) {
+        this.searchMillis = searchMillis;
+        this.breadth = breadth;
+    }
+
+    public void build(LocalBoard board, int plies) {
+        if (plies <= 0 || !searched.add(board.hash())) {
+            return;
+        }
+
+        MonteCarloSearch search = new MonteCarloSearch(MOVE_CHOICES, MAX_DEPTH);
+        TreeNode root = search.search(board, searchMillis, NUM_THREADS);
+        System.out.println("Searched position " + searched.size() + " (" + search.getIterations() + " iterations)");
+
+        List<TreeNode> children = new ArrayList<>(root.children);
+        children.sort(Comparator.comparingInt((TreeNode child) -> child.visits).reversed());
+        for (TreeNode child : children) {
+            if (child.visits >= OpeningBook.MIN_VISITS) {
+                float winRate = (float) child.wins / child.visits;
+                entries.add(new long[] { board.hash(), child.action.encode(), child.visits, Float.floatToIntBits(winRate) });
+            }
+        }
+
+        for (int i = 0; i < Math.min(breadth, children.size()); i++) {
+            LocalBoard next = board.copy();
+            next.updateState(children.get(i).action);
+            next.setLocalPlayer(board.getOpponent());
+            build(next, plies - 1);
+        }
+    }
+
+    public void write(String fileName) throws IOException {
+        // Sort by hash, then most visited move first
+        entries.sort(Comparator.comparingLong((long[] entry) -> entry[0])
+                .thenComparing(Comparator.comparingLong((long[] entry) -> entry[2]).reversed()));
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(OpeningBook.VERSION);
+            out.writeInt(entries.size());
+            for (long[] entry : entries) {
+                out.writeLong(entry[0]);
+                out.writeInt((int) entry[1]);
+                out.writeInt((int) entry[2]);
+                out.writeInt((int) entry[3]);
+            }
+        }
+        System.out.println("Wrote " + entries.size() + " book entries to " + fileName);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: OpeningBookBuilder <output file> [plies] [seconds per position] [breadth]");
+            return;
+        }
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 120;
+        int breadth = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        LocalBoard board = new LocalBoard();
+        board.setLocalPlayer(LocalBoard.QUEEN_PLAYER_2);
+
+        OpeningBookBuilder builder = new OpeningBookBuilder(seconds * 1000, breadth);
+        builder.build(board, plies);
+        builder.write(args[0]);
+    }
+}
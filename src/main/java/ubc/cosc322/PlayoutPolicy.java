@@ -0,0 +1,276 @@
+package ubc.cosc322;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/* PlayoutPolicy.java
+ *
+ * How MonteCarloSearch picks moves during playouts. The default, uniform, picks uniformly from the full
+ * MoveActionFactory move list. The heavy policies never list every move. They pick in two steps, each
+ * biased by a cheap prior:
+ * - the queen move, by how open the destination is (empty squares around it);
+ * - then the arrow, by how many opponent queen rays it cuts (opponent queens it is in line with).
+ * Both priors are small integers, so each step only walks the precomputed ray tables below and looks up
+ * its weights in a table.
+ *
+ * Modes, chosen with -Damazons.playout=<uniform|epsilon|softmax>:
+ * - epsilon: the best candidate by prior (ties broken at random), or with probability
+ *   -Damazons.playout.epsilon (default 0.1) a uniformly random one.
+ * - softmax: candidates drawn with probability proportional to exp(prior / -Damazons.playout.temperature)
+ *   (default 1.0, must be above 0).
+ * Settings that can't be used (unknown mode, epsilon outside [0, 1], temperature not above 0) are reported,
+ * and playouts fall back to uniform.
+ */
+public class PlayoutPolicy {
+
+    public enum Mode { UNIFORM, EPSILON, SOFTMAX }
+
+    private static final int SIZE = 10;
+    private static final int[][] DIRECTIONS = { { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 }, { 1, 1 }, { 1, -1 }, { -1, 1 }, { -1, -1 } };
+
+    // Highest prior: 8 neighbours for a destination, 8 directions for an arrow
+    private static final int MAX_PRIOR = 8;
+    // Most squares a queen can reach from one square on an empty board
+    private static final int MAX_REACH = 35;
+    private static final int QUEENS = 4;
+
+    // RAYS[square][direction]: the squares from square outwards in that direction, nearest first
+    private static final int[][][] RAYS = new int[LocalBoard.SQUARES][DIRECTIONS.length][];
+    // NEIGHBOURS[square]: the squares next to square
+    private static final int[][] NEIGHBOURS = new int[LocalBoard.SQUARES][];
+    // 1-indexed board row and column of each square
+    private static final int[] ROW = new int[LocalBoard.SQUARES];
+    private static final int[] COL = new int[LocalBoard.SQUARES];
+
+    static {
+        for (int square = 0; square < LocalBoard.SQUARES; square++) {
+            ROW[square] = square / SIZE + 1;
+            COL[square] = square % SIZE + 1;
+        }
+        for (int square = 0; square < LocalBoard.SQUARES; square++) {
+            int neighbours = 0;
+            int[] neighbourSquares = new int[DIRECTIONS.length];
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int length = 0;
+                int[] ray = new int[SIZE - 1];
+                for (int row = ROW[square] + DIRECTIONS[d][0], col = COL[square] + DIRECTIONS[d][1];
+                        row >= 1 && row <= SIZE && col >= 1 && col <= SIZE;
+                        row += DIRECTIONS[d][0], col += DIRECTIONS[d][1]) {
+                    ray[length++] = LocalBoard.toSquare(row, col);
+                }
+                RAYS[square][d] = Arrays.copyOf(ray, length);
+                if (length > 0) {
+                    neighbourSquares[neighbours++] = ray[0];
+                }
+            }
+            NEIGHBOURS[square] = Arrays.copyOf(neighbourSquares, neighbours);
+        }
+    }
+
+    private static final double DEFAULT_EPSILON = 0.1;
+    private static final double DEFAULT_TEMPERATURE = 1.0;
+
+    public static final PlayoutPolicy UNIFORM = new PlayoutPolicy(Mode.UNIFORM, DEFAULT_EPSILON, DEFAULT_TEMPERATURE);
+
+    private final Mode mode;
+    private final double epsilon;
+    private final double temperature;
+    // Softmax weight of each prior value, relative to the highest prior so it never overflows
+    private final double[] weights = new double[MAX_PRIOR + 1];
+
+    // Candidate lists for playMove, one set per playout thread
+    private static final ThreadLocal<Candidates> CANDIDATES = ThreadLocal.withInitial(Candidates::new);
+
+    private static class Candidates {
+        final int[] froms = new int[QUEENS * MAX_REACH];
+        final int[] tos = new int[QUEENS * MAX_REACH];
+        final int[] priors = new int[QUEENS * MAX_REACH];
+        final int[] arrows = new int[MAX_REACH];
+    }
+
+    public PlayoutPolicy(Mode mode, double epsilon, double temperature) {
+        if (mode == null) {
+            throw new IllegalArgumentException("no playout mode");
+        }
+        if (!(epsilon >= 0 && epsilon <= 1)) {
+            throw new IllegalArgumentException("epsilon must be between 0 and 1, got " + epsilon);
+        }
+        if (!(temperature > 0)) {
+            throw new IllegalArgumentException("temperature must be above 0, got " + temperature);
+        }
+        this.mode = mode;
+        this.epsilon = epsilon;
+        this.temperature = temperature;
+        for (int prior = 0; prior <= MAX_PRIOR; prior++) {
+            weights[prior] = Math.exp((prior - MAX_PRIOR) / temperature);
+        }
+    }
+
+    // The policy configured with system properties; uniform if none is set or the settings are bad
+    public static PlayoutPolicy load() {
+        String mode = System.getProperty("amazons.playout", "uniform").trim();
+        PlayoutPolicy policy;
+        try {
+            policy = new PlayoutPolicy(parseMode(mode),
+                    get("amazons.playout.epsilon", DEFAULT_EPSILON),
+                    get("amazons.playout.temperature", DEFAULT_TEMPERATURE));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Bad playout policy settings, using uniform playouts: " + e.getMessage());
+            return UNIFORM;
+        }
+        if (policy.mode != Mode.UNIFORM) {
+            System.out.println("Playout policy: " + policy);
+        }
+        return policy;
+    }
+
+    private static Mode parseMode(String name) {
+        for (Mode mode : Mode.values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("unknown mode '" + name + "', expected uniform, epsilon or softmax");
+    }
+
+    private static double get(String key, double defaultValue) {
+        String value = System.getProperty(key);
+        return (value != null) ? Double.parseDouble(value.trim()) : defaultValue;
+    }
+
+    public boolean isUniform() {
+        return mode == Mode.UNIFORM;
+    }
+
+    /**
+     * Picks a move for player with a heavy policy and plays it on state. Returns the move in
+     * MoveAction.encode() form, or -1 if the player has no moves (the state is then unchanged).
+     */
+    public int playMove(int[][] state, int player, Random random) {
+        int opponent = (player == 1) ? 2 : 1;
+        Candidates candidates = CANDIDATES.get();
+        int[] froms = candidates.froms;
+        int[] tos = candidates.tos;
+        int[] priors = candidates.priors;
+
+        // Step 1: queen move, scored by the empty squares around the destination
+        int count = 0;
+        for (int from = 0; from < LocalBoard.SQUARES; from++) {
+            if (state[ROW[from]][COL[from]] != player) {
+                continue;
+            }
+            for (int[] ray : RAYS[from]) {
+                for (int to : ray) {
+                    if (state[ROW[to]][COL[to]] != LocalBoard.EMPTY) {
+                        break;
+                    }
+                    int open = 0;
+                    for (int neighbour : NEIGHBOURS[to]) {
+                        // The square the queen leaves is empty after the move
+                        if (neighbour == from || state[ROW[neighbour]][COL[neighbour]] == LocalBoard.EMPTY) {
+                            open++;
+                        }
+                    }
+                    froms[count] = from;
+                    tos[count] = to;
+                    priors[count] = open;
+                    count++;
+                }
+            }
+        }
+        if (count == 0) {
+            return -1;
+        }
+        int queenMove = pick(priors, count, random);
+        int from = froms[queenMove];
+        int to = tos[queenMove];
+        state[ROW[from]][COL[from]] = LocalBoard.EMPTY;
+        state[ROW[to]][COL[to]] = player;
+
+        // Step 2: arrow, scored by the opponent queens it is in line with (the rays it cuts)
+        int[] arrows = candidates.arrows;
+        count = 0;
+        for (int[] ray : RAYS[to]) {
+            for (int arrow : ray) {
+                if (state[ROW[arrow]][COL[arrow]] != LocalBoard.EMPTY) {
+                    break;
+                }
+                int cut = 0;
+                for (int[] arrowRay : RAYS[arrow]) {
+                    for (int square : arrowRay) {
+                        int value = state[ROW[square]][COL[square]];
+                        if (value != LocalBoard.EMPTY) {
+                            if (value == opponent) {
+                                cut++;
+                            }
+                            break;
+                        }
+                    }
+                }
+                arrows[count] = arrow;
+                priors[count] = cut;
+                count++;
+            }
+        }
+        // A queen that could move can always shoot back where it came from, so count > 0
+        int arrow = arrows[pick(priors, count, random)];
+        state[ROW[arrow]][COL[arrow]] = -1;
+        return from | (to << 7) | (arrow << 14);
+    }
+
+    // Index of the candidate to play, by mode
+    private int pick(int[] priors, int count, Random random) {
+        if (mode == Mode.EPSILON) {
+            if (random.nextDouble() < epsilon) {
+                return random.nextInt(count);
+            }
+            return best(priors, count, random);
+        }
+        if (mode == Mode.SOFTMAX) {
+            double total = 0;
+            for (int i = 0; i < count; i++) {
+                total += weights[priors[i]];
+            }
+            // At a very low temperature every weight below the highest prior rounds to 0: softmax is greedy
+            if (total == 0) {
+                return best(priors, count, random);
+            }
+            double target = random.nextDouble() * total;
+            for (int i = 0; i < count; i++) {
+                target -= weights[priors[i]];
+                if (target < 0) {
+                    return i;
+                }
+            }
+            return count - 1;
+        }
+        return random.nextInt(count);
+    }
+
+    // Index of the candidate with the highest prior, ties broken at random
+    private static int best(int[] priors, int count, Random random) {
+        int best = 0;
+        int ties = 1;
+        for (int i = 1; i < count; i++) {
+            if (priors[i] > priors[best]) {
+                best = i;
+                ties = 1;
+            } else if (priors[i] == priors[best] && random.nextInt(++ties) == 0) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+            case EPSILON:
+                return "epsilon-greedy (epsilon " + epsilon + ")";
+            case SOFTMAX:
+                return "softmax (temperature " + temperature + ")";
+            default:
+                return "uniform";
+        }
+    }
+}
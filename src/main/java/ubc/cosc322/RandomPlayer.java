@@ -32,6 +32,7 @@ public class RandomPlayer extends BasePlayer {
     
         if (possibleMoves.isEmpty()) {
             System.out.println("No valid moves available!");
+            recordGameEndIfOver(localBoard.localPlayer);
             return;
         }
     
@@ -42,9 +43,12 @@ public class RandomPlayer extends BasePlayer {
         List<Integer> arrowTarget = (List<Integer>) selectedMove.get(AmazonsGameMessage.ARROW_POS);
     
         MoveAction moveAction = new MoveAction(queenCurrent, queenTarget, arrowTarget);
+        if (gameLog != null) {
+            gameLog.move(localBoard.localPlayer, moveAction);
+        }
         localBoard.updateState(moveAction);
     
-        gamegui.updateGameState(selectedMove);
-        gameClient.sendMoveMessage(selectedMove);
+        sendMoveMessage(selectedMove);
+        recordGameEndIfOver(localBoard.getOpponent());
     }
 }
@@ -0,0 +1,114 @@
+package ubc.cosc322;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/* SearchScheduler.java
+ *
+ * One worker pool shared by the searches of several games running in the same process (see GameHost).
+ * Each search registers its time budget per move when it starts. Whenever a search starts or finishes, the
+ * pool's threads are divided between the active searches in proportion to their budgets, so a game with 28
+ * seconds per move gets twice the threads of one with 14. Every active search gets at least one thread, and
+ * the threads left over after rounding down go to the searches with the largest remainders, so no thread
+ * sits idle.
+ *
+ * Searches poll threadsFor() while they run, and their workers requeue themselves every time slice
+ * (see MonteCarloSearch), so searches take turns on the threads and shares change as soon as a
+ * search starts or finishes.
+ */
+public class SearchScheduler {
+
+    private final int totalThreads;
+    private final ExecutorService pool;
+    // Time budget per move of each active search, in registration order (which breaks ties)
+    private final Map<Object, Long> budgets = new LinkedHashMap<>();
+    private final Map<Object, Integer> shares = new ConcurrentHashMap<>();
+
+    public SearchScheduler(int totalThreads) {
+        this.totalThreads = totalThreads;
+        // A plain FIFO pool, so a worker that gives up its thread goes to the back of the line
+        this.pool = Executors.newFixedThreadPool(totalThreads, runnable -> {
+            Thread thread = new Thread(runnable, "search-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ExecutorService getPool() {
+        return pool;
+    }
+
+    public int getTotalThreads() {
+        return totalThreads;
+    }
+
+    public synchronized void register(Object search, long budgetMillis) {
+        budgets.put(search, Math.max(1, budgetMillis));
+        rebalance();
+    }
+
+    public synchronized void unregister(Object search) {
+        budgets.remove(search);
+        shares.remove(search);
+        rebalance();
+    }
+
+    // Threads currently granted to the search (0 if it is not registered)
+    public int threadsFor(Object search) {
+        Integer share = shares.get(search);
+        return (share != null) ? share : 0;
+    }
+
+    public synchronized int activeSearches() {
+        return budgets.size();
+    }
+
+    private void rebalance() {
+        List<Object> searches = new ArrayList<>(budgets.keySet());
+        long totalBudget = 0;
+        for (long budget : budgets.values()) {
+            totalBudget += budget;
+        }
+
+        // Round every proportional share down (but not below 1), then hand out what is left one thread at a
+        // time, largest remainder first. A share raised to 1 has no remainder left to claim.
+        int[] counts = new int[searches.size()];
+        long[] remainders = new long[searches.size()];
+        int granted = 0;
+        for (int i = 0; i < counts.length; i++) {
+            long exact = totalThreads * budgets.get(searches.get(i));
+            counts[i] = (int) (exact / totalBudget);
+            remainders[i] = exact % totalBudget;
+            if (counts[i] == 0) {
+                counts[i] = 1;
+                remainders[i] = -1;
+            }
+            granted += counts[i];
+        }
+        Integer[] order = new Integer[counts.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(remainders[b], remainders[a]));
+        for (int i = 0; i < order.length && granted < totalThreads; i++) {
+            if (remainders[order[i]] > 0) {
+                counts[order[i]]++;
+                granted++;
+            }
+        }
+
+        for (int i = 0; i < counts.length; i++) {
+            shares.put(searches.get(i), counts[i]);
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
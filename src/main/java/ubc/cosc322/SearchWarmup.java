@@ -0,0 +1,195 @@
+package ubc.cosc322;
+
+import java.awt.GraphicsEnvironment;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import ygraph.ai.smartfox.games.BaseGameGUI;
+import ygraph.ai.smartfox.games.amazons.AmazonsGameMessage;
+
+/* SearchWarmup.java
+ *
+ * Runs short synthetic searches before the first game so the JIT has compiled the move generator,
+ * the heuristics and the playouts by the time the first real move is searched. Without it the
+ * opening search, where the branching factor is largest, runs mostly in the interpreter and gets
+ * far fewer iterations than later moves.
+ *
+ * The sample positions are the start position and positions reached by random moves (seeded, so
+ * every warm-up does the same work), searched with the player's width and depth schedule. MonteCarloPlayer
+ * and SearchWorker run the warm-up once per process, on their own search threads, when
+ * -Damazons.warmup=<ms> is set.
+ *
+ * With --startup, the main method is the training run for the AppCDS archive built by the "appcds" Maven
+ * profile. It first goes through the client's startup: it loads Main, builds a headless player, sets up
+ * the GUI look and feel when there is a display, and loads every class of the game client and the other
+ * libraries on the classpath. Then it warms up the search, so the archive covers both.
+ *
+ * USAGE:
+ * java ubc.cosc322.SearchWarmup [--startup] [milliseconds]
+ */
+public class SearchWarmup {
+
+    public static final long WARMUP_TIME = Long.getLong("amazons.warmup", 0);
+
+    private static final int[] SAMPLE_PLIES = { 0, 10, 20, 30 };
+    private static final long SEARCH_TIME = 500;
+
+    private static boolean done = false;
+
+    // Warms up once per process with the threads a player's own search gets; later calls return right away
+    public static void runOnce(long millis) {
+        runOnce(millis, DistributedSearch.localThreads());
+    }
+
+    public static synchronized void runOnce(long millis, int threads) {
+        if (done || millis <= 0) {
+            return;
+        }
+        done = true;
+        run(millis, threads);
+    }
+
+    // Searches the sample positions in turn until the time is used up. Returns the iterations run.
+    public static long run(long millis, int threads) {
+        List<LocalBoard> positions = samplePositions(new Random(322));
+        long endTime = System.currentTimeMillis() + millis;
+        long iterations = 0;
+        int searches = 0;
+
+        System.out.println("Warming up the search for " + millis + " ms...");
+        for (int i = 0; System.currentTimeMillis() < endTime; i++) {
+            int index = i % positions.size();
+            LocalBoard board = positions.get(index);
+            long timeLeft = endTime - System.currentTimeMillis();
+            // The searching side's move number at this ply
+            int move = SAMPLE_PLIES[index] / 2 + 1;
+            MonteCarloSearch search = new MonteCarloSearch(MonteCarloSearch.moveChoicesFor(move), MonteCarloSearch.maxDepthFor(move));
+            search.search(board.copy(), Math.max(1, Math.min(SEARCH_TIME, timeLeft)), threads);
+            iterations += search.getIterations();
+            searches++;
+        }
+        System.out.println("Warm-up done: " + searches + " searches, " + iterations + " iterations.");
+        return iterations;
+    }
+
+    // The start position and the positions after each of SAMPLE_PLIES random moves
+    private static List<LocalBoard> samplePositions(Random random) {
+        List<LocalBoard> positions = new ArrayList<>();
+        LocalBoard board = new LocalBoard();
+        int player = LocalBoard.QUEEN_PLAYER_2;
+        board.setLocalPlayer(player);
+        int ply = 0;
+        for (int samplePly : SAMPLE_PLIES) {
+            for (; ply < samplePly; ply++) {
+                List<Map<String, Object>> actions = new MoveActionFactory(board.getState(), player).getActions();
+                if (actions.isEmpty()) {
+                    return positions;
+                }
+                board.updateState(toMoveAction(actions.get(random.nextInt(actions.size()))));
+                player = (player == 1) ? 2 : 1;
+                board.setLocalPlayer(player);
+            }
+            positions.add(board.copy());
+        }
+        return positions;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MoveAction toMoveAction(Map<String, Object> action) {
+        return new MoveAction((List<Integer>) action.get(AmazonsGameMessage.QUEEN_POS_CURR),
+                (List<Integer>) action.get(AmazonsGameMessage.QUEEN_POS_NEXT),
+                (List<Integer>) action.get(AmazonsGameMessage.ARROW_POS));
+    }
+
+    // The client's startup path, without connecting to the server. Returns the library classes loaded.
+    static int loadStartupClasses() throws ClassNotFoundException {
+        Class.forName(Main.class.getName());
+        MonteCarloPlayer player = new MonteCarloPlayer("cds-training", "", false, null);
+        player.shutdown();
+        if (!GraphicsEnvironment.isHeadless()) {
+            BaseGameGUI.sys_setup();
+        }
+
+        // Every class in the library jars (game client, SmartFox and their dependencies), loaded but not initialized
+        ClassLoader loader = SearchWarmup.class.getClassLoader();
+        int loaded = 0;
+        for (File library : libraryJars()) {
+            try (JarFile jar = new JarFile(library)) {
+                for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+                    String name = entries.nextElement().getName();
+                    if (!name.endsWith(".class") || name.startsWith("META-INF/") || name.endsWith("module-info.class")) {
+                        continue;
+                    }
+                    try {
+                        Class.forName(name.substring(0, name.length() - ".class".length()).replace('/', '.'), false, loader);
+                        loaded++;
+                    } catch (ClassNotFoundException | LinkageError e) {
+                        // Optional dependency missing; the client doesn't load this class either
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Could not read " + library + ": " + e.getMessage());
+            }
+        }
+        return loaded;
+    }
+
+    // Library jars on the classpath, and those in our own jar's manifest Class-Path (the runnable jar's target/lib)
+    private static List<File> libraryJars() {
+        List<File> jars = new ArrayList<>();
+        File own = ownJar();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            File file = new File(entry).getAbsoluteFile();
+            if (!entry.endsWith(".jar")) {
+                continue;
+            }
+            if (!file.equals(own)) {
+                jars.add(file);
+                continue;
+            }
+            try (JarFile jar = new JarFile(file)) {
+                Manifest manifest = jar.getManifest();
+                String classPath = (manifest != null) ? manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) : null;
+                if (classPath != null) {
+                    for (String library : classPath.trim().split("\\s+")) {
+                        jars.add(new File(file.getParentFile(), library));
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Could not read " + file + ": " + e.getMessage());
+            }
+        }
+        return jars;
+    }
+
+    // The jar this class was loaded from, or null when running from a classes directory
+    private static File ownJar() {
+        try {
+            File file = new File(SearchWarmup.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            return file.isFile() ? file : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws ClassNotFoundException {
+        boolean startup = args.length > 0 && args[0].equals("--startup");
+        int argIndex = startup ? 1 : 0;
+        long millis = args.length > argIndex ? Long.parseLong(args[argIndex]) : 10000;
+        long start = System.currentTimeMillis();
+        if (startup) {
+            System.out.println("Loaded " + loadStartupClasses() + " library classes for the client startup.");
+        }
+        run(millis, DistributedSearch.localThreads());
+        System.out.println("Total time: " + (System.currentTimeMillis() - start) + " ms");
+    }
+}
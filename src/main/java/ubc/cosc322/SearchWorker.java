@@ -0,0 +1,140 @@
+package ubc.cosc322;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/* SearchWorker.java
+ *
+ * A search process for DistributedSearch. It listens on a loopback port, and for every position a
+ * coordinator sends it runs its own MonteCarloSearch until the coordinator's deadline, then replies with
+ * the statistics of the root's children. Each worker is a separate JVM with its own heap and GC.
+ *
+ * Every coordinator connection is served on its own thread, so several players (see GameHost) can share
+ * the same workers. A search can be cancelled by the coordinator, in which case it replies early. A cancel
+ * names the search it is meant for and is ignored if that search is no longer the current one.
+ *
+ * USAGE:
+ * java ubc.cosc322.SearchWorker <port> [threads]
+ */
+public class SearchWorker {
+
+    // Time kept back from the deadline to send the reply
+    private static final long REPLY_MARGIN = 50;
+
+    private final int numThreads;
+
+    public SearchWorker(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    public void serve(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println("Search worker listening on port " + port + " with " + numThreads + " threads.");
+            while (true) {
+                Socket socket = server.accept();
+                Thread thread = new Thread(() -> handle(socket), "search-worker-" + socket.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    // Reads requests until the coordinator disconnects. Searches run on their own thread so a cancel can be read meanwhile.
+    private void handle(Socket socket) {
+        ExecutorService searchThread = Executors.newSingleThreadExecutor();
+        // The connection's current search and its id, guarded by current
+        MonteCarloSearch[] current = new MonteCarloSearch[1];
+        int[] currentId = new int[1];
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    return;
+                } else if (type == DistributedSearch.SEARCH) {
+                    int id = in.readInt();
+                    LocalBoard board = DistributedSearch.readBoard(in);
+                    int moveChoices = in.readInt();
+                    int maxDepth = in.readInt();
+                    long deadline = in.readLong();
+
+                    MonteCarloSearch search = new MonteCarloSearch(moveChoices, maxDepth);
+                    synchronized (current) {
+                        current[0] = search;
+                        currentId[0] = id;
+                    }
+                    searchThread.execute(() -> {
+                        long timeMillis = Math.max(1, deadline - System.currentTimeMillis() - REPLY_MARGIN);
+                        TreeNode rootNode = search.search(board, timeMillis, numThreads);
+                        try {
+                            writeReply(out, search, rootNode);
+                        } catch (IOException e) {
+                            System.err.println("Could not send search reply: " + e.getMessage());
+                        }
+                    });
+                } else if (type == DistributedSearch.CANCEL) {
+                    int id = in.readInt();
+                    synchronized (current) {
+                        if (current[0] != null && currentId[0] == id) {
+                            current[0].cancel();
+                        }
+                    }
+                } else {
+                    throw new IOException("Unknown request type: " + type);
+                }
+            }
+        } catch (EOFException e) {
+            // Coordinator went away
+        } catch (IOException e) {
+            System.err.println("Search worker connection failed: " + e.getMessage());
+        } finally {
+            synchronized (current) {
+                if (current[0] != null) {
+                    current[0].cancel();
+                }
+            }
+            searchThread.shutdown();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    // Reply: long iterations, int root visits, int root wins, int children, then int move, int visits, int wins per child
+    private static void writeReply(DataOutputStream out, MonteCarloSearch search, TreeNode rootNode) throws IOException {
+        out.writeLong(search.getIterations());
+        out.writeInt(rootNode.visits);
+        out.writeInt(rootNode.wins);
+        out.writeInt(rootNode.children.size());
+        for (TreeNode child : rootNode.children) {
+            out.writeInt(child.action.encode());
+            out.writeInt(child.visits);
+            out.writeInt(child.wins);
+        }
+        out.flush();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: SearchWorker <port> [threads]");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        SearchWarmup.runOnce(SearchWarmup.WARMUP_TIME, threads);
+        new SearchWorker(threads).serve(port);
+    }
+}
@@ -0,0 +1,60 @@
+package ubc.cosc322;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/* SelfPlay.java
+ *
+ * Plays MonteCarloSearch against itself without a game server and appends every game to a
+ * GameRecordLog, e.g. to build evaluation datasets. Like the server, black (player 2) moves first.
+ * Each side searches with the same width and depth schedule as MonteCarloPlayer.
+ *
+ * USAGE:
+ * java ubc.cosc322.SelfPlay <log file> [games] [seconds per move]
+ */
+public class SelfPlay {
+
+    private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+
+    // Plays one game and returns the winner
+    public static int playGame(GameRecordLog log, long millisPerMove) {
+        LocalBoard board = new LocalBoard();
+        int player = LocalBoard.QUEEN_PLAYER_2;
+        log.gameStart(0);
+
+        for (int ply = 0; ; ply++) {
+            board.setLocalPlayer(player);
+            // Each side's n-th move
+            int move = ply / 2 + 1;
+            MonteCarloSearch search = new MonteCarloSearch(MonteCarloSearch.moveChoicesFor(move), MonteCarloSearch.maxDepthFor(move));
+            TreeNode root = search.search(board, millisPerMove, NUM_THREADS);
+            TreeNode best = MonteCarloSearch.bestChild(root);
+            if (best == null) {
+                int winner = board.getOpponent();
+                log.gameEnd(winner);
+                return winner;
+            }
+
+            log.move(player, best.action, search.getIterations(), best.visits,
+                    (best.visits > 0) ? (double) best.wins / best.visits : 0, root.children.size());
+            board.updateState(best.action);
+            player = board.getOpponent();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: SelfPlay <log file> [games] [seconds per move]");
+            return;
+        }
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+
+        try (GameRecordLog log = new GameRecordLog(Paths.get(args[0]))) {
+            for (int game = 1; game <= games; game++) {
+                int winner = playGame(log, (long) (seconds * 1000));
+                System.out.println("Game " + game + " winner: player " + winner);
+            }
+        }
+    }
+}
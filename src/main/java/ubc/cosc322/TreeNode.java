@@ -0,0 +1,53 @@
+package ubc.cosc322;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/* TreeNode.java
+ *
+ * A node in the MonteCarloSearch tree. It holds the board after this node's move, the move itself,
+ * the win/visit counts from playouts through this node, and the AMAF tables for the moves made from it.
+ */
+public class TreeNode {
+    LocalBoard board;
+    TreeNode parent;
+    List<TreeNode> children = new ArrayList<>();
+    MoveAction action;
+    int wins = 0;
+    int visits = 0;
+    // Playouts through this node that have been selected but not scored yet (virtual loss)
+    int pendingVisits = 0;
+    List<Map<String, Object>> untriedMoves;
+
+    // Square indices of this node's move, cached so UCT selection doesn't unbox them.
+    int queenTargetSquare;
+    int arrowTargetSquare;
+
+    // AMAF statistics for moves made from this node, indexed by queen destination
+    // square in [0, SQUARES) and by arrow square in [SQUARES, 2 * SQUARES).
+    int[] amafVisits = new int[2 * LocalBoard.SQUARES];
+    int[] amafWins = new int[2 * LocalBoard.SQUARES];
+
+    public TreeNode(LocalBoard board, TreeNode parent, MoveAction action) {
+        this.board = board.copy();
+        this.parent = parent;
+        this.action = action;
+        if (action != null) {
+            this.queenTargetSquare = LocalBoard.toSquare(action.getQueenTarget());
+            this.arrowTargetSquare = LocalBoard.toSquare(action.getArrowTarget());
+        }
+        MoveActionFactory factory = new MoveActionFactory(board.getState(), board.getLocalPlayer());
+        this.untriedMoves = factory.getActions();
+    }
+
+    // Adds the child reached by playing action here. Every child in a tree is built this way, whether by
+    // MonteCarloSearch.expand or when rebuilding a saved or merged tree.
+    TreeNode addChild(MoveAction action) {
+        LocalBoard childBoard = board.copy();
+        childBoard.updateState(action);
+        TreeNode child = new TreeNode(childBoard, this, action);
+        children.add(child);
+        return child;
+    }
+}
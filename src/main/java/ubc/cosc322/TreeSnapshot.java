@@ -0,0 +1,221 @@
+package ubc.cosc322;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/* TreeSnapshot.java
+ *
+ * Saves a MonteCarloSearch tree to a compact binary snapshot and loads it back, either to browse it
+ * or as a warm start for a new search of the same position.
+ *
+ * Only nodes up to maxDepth plies below the root with at least minVisits visits are written.
+ *
+ * FILE FORMAT (big-endian):
+ * header: int magic ('AMZT'), int version, long root position hash, byte player to move
+ * nodes:  pre-order, root first. Each node is its move (3 bytes, MoveAction.encode(), 0 for the root),
+ *         int visits, int wins, the node's AMAF table (short entry count, then per non-zero entry
+ *         ubyte index, int visits, int wins; version 2 only), short number of children that follow it.
+ *
+ * A rebuilt node with saved children gets no untried moves, so the search carries on with the children
+ * it had kept instead of expanding a second set. Version 1 files (no AMAF tables) can still be read.
+ *
+ * USAGE (browser):
+ * java ubc.cosc322.TreeSnapshot <snapshot file>
+ */
+public class TreeSnapshot {
+
+    public static final int MAGIC = 0x414D5A54;
+    public static final int VERSION = 2;
+
+    // A node as stored in a snapshot, without a board
+    public static class Node {
+        public int move;
+        public int visits;
+        public int wins;
+        public int[] amafVisits = new int[2 * LocalBoard.SQUARES];
+        public int[] amafWins = new int[2 * LocalBoard.SQUARES];
+        public Node[] children;
+    }
+
+    public final long rootHash;
+    public final int rootPlayer;
+    public final Node root;
+
+    private TreeSnapshot(long rootHash, int rootPlayer, Node root) {
+        this.rootHash = rootHash;
+        this.rootPlayer = rootPlayer;
+        this.root = root;
+    }
+
+    public static void write(TreeNode rootNode, Path path, int maxDepth, int minVisits) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(rootNode.board.hash());
+            out.writeByte(rootNode.board.getLocalPlayer());
+            writeNode(out, rootNode, 0, maxDepth, minVisits);
+        }
+    }
+
+    private static void writeNode(DataOutputStream out, TreeNode node, int depth, int maxDepth, int minVisits) throws IOException {
+        int move = (node.action != null) ? node.action.encode() : 0;
+        out.writeByte(move >>> 16);
+        out.writeShort(move);
+        out.writeInt(node.visits);
+        out.writeInt(node.wins);
+        int amafEntries = 0;
+        for (int visits : node.amafVisits) {
+            if (visits != 0) {
+                amafEntries++;
+            }
+        }
+        out.writeShort(amafEntries);
+        for (int i = 0; i < node.amafVisits.length; i++) {
+            if (node.amafVisits[i] != 0) {
+                out.writeByte(i);
+                out.writeInt(node.amafVisits[i]);
+                out.writeInt(node.amafWins[i]);
+            }
+        }
+
+        List<TreeNode> kept = new ArrayList<>();
+        if (depth < maxDepth) {
+            for (TreeNode child : node.children) {
+                if (child.visits >= minVisits) {
+                    kept.add(child);
+                }
+            }
+        }
+        out.writeShort(kept.size());
+        for (TreeNode child : kept) {
+            writeNode(out, child, depth + 1, maxDepth, minVisits);
+        }
+    }
+
+    public static TreeSnapshot read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a tree snapshot file");
+            }
+            int version = in.readInt();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported tree snapshot version: " + version);
+            }
+            long rootHash = in.readLong();
+            int rootPlayer = in.readByte();
+            return new TreeSnapshot(rootHash, rootPlayer, readNode(in, version));
+        }
+    }
+
+    private static Node readNode(DataInputStream in, int version) throws IOException {
+        Node node = new Node();
+        node.move = (in.readUnsignedByte() << 16) | in.readUnsignedShort();
+        node.visits = in.readInt();
+        node.wins = in.readInt();
+        if (version >= 2) {
+            int amafEntries = in.readUnsignedShort();
+            for (int i = 0; i < amafEntries; i++) {
+                int index = in.readUnsignedByte();
+                if (index >= node.amafVisits.length) {
+                    throw new IOException("Bad AMAF index in tree snapshot: " + index);
+                }
+                node.amafVisits[index] = in.readInt();
+                node.amafWins[index] = in.readInt();
+            }
+        }
+        node.children = new Node[in.readUnsignedShort()];
+        for (int i = 0; i < node.children.length; i++) {
+            node.children[i] = readNode(in, version);
+        }
+        return node;
+    }
+
+    /**
+     * Rebuilds the snapshot as a search tree rooted at the given board, to continue searching from.
+     * Returns null if the snapshot was taken from a different position.
+     */
+    public TreeNode toTree(LocalBoard rootBoard) {
+        if (rootBoard.hash() != rootHash || rootBoard.getLocalPlayer() != rootPlayer) {
+            return null;
+        }
+        TreeNode rootNode = new TreeNode(rootBoard, null, null);
+        copyStatistics(root, rootNode);
+        return rootNode;
+    }
+
+    private static void copyStatistics(Node source, TreeNode target) {
+        target.visits = source.visits;
+        target.wins = source.wins;
+        System.arraycopy(source.amafVisits, 0, target.amafVisits, 0, target.amafVisits.length);
+        System.arraycopy(source.amafWins, 0, target.amafWins, 0, target.amafWins.length);
+        // The node was expanded: its top moves are the saved children, so don't expand it again
+        if (source.children.length > 0) {
+            target.untriedMoves.clear();
+        }
+        for (Node child : source.children) {
+            copyStatistics(child, target.addChild(MoveAction.decode(child.move)));
+        }
+    }
+
+    // Interactive browser: lists the children of the current node and lets you walk up and down the tree
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: TreeSnapshot <snapshot file>");
+            return;
+        }
+        TreeSnapshot snapshot = read(Paths.get(args[0]));
+        System.out.printf("Root position %016x, player %d to move%n", snapshot.rootHash, snapshot.rootPlayer);
+
+        Deque<Node> path = new ArrayDeque<>();
+        path.push(snapshot.root);
+        BufferedReader input = new BufferedReader(new InputStreamReader(System.in));
+
+        while (true) {
+            Node node = path.peek();
+            Node[] children = node.children.clone();
+            Arrays.sort(children, (a, b) -> Integer.compare(b.visits, a.visits));
+
+            System.out.println();
+            System.out.println("Depth " + (path.size() - 1) + "  Visits: " + node.visits + "  Wins: " + node.wins
+                    + (node == snapshot.root ? "" : "  Move: " + MoveAction.decode(node.move)));
+            for (int i = 0; i < children.length; i++) {
+                Node child = children[i];
+                double winRate = (child.visits > 0) ? 100.0 * child.wins / child.visits : 0.0;
+                System.out.printf("%3d. %s  Visits: %d  Win rate: %.2f%%  Children: %d%n",
+                        i + 1, MoveAction.decode(child.move), child.visits, winRate, child.children.length);
+            }
+            System.out.print("[number] open child, [u] up, [q] quit > ");
+
+            String line = input.readLine();
+            if (line == null || line.trim().equals("q")) {
+                return;
+            } else if (line.trim().equals("u")) {
+                if (path.size() > 1) {
+                    path.pop();
+                }
+            } else {
+                try {
+                    int index = Integer.parseInt(line.trim()) - 1;
+                    if (index >= 0 && index < children.length) {
+                        path.push(children[index]);
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("Unknown command: " + line);
+                }
+            }
+        }
+    }
+}